@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.base;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Host microbenchmark for {@link MimeMatcher}. Reports time and bytes allocated per match, and
+ * fails if matching allocates. Run with:
+ *
+ * <pre>
+ *   m DocumentsUIMimeMatcherBenchmark && DocumentsUIMimeMatcherBenchmark
+ * </pre>
+ */
+public final class MimeMatcherBenchmark {
+
+    private static final int ITERATIONS = 10_000_000;
+
+    private static final String[] FILTERS = new String[] {
+            "image/*", "video/*", "application/pdf", "text/plain", "vnd.android.document/directory"
+    };
+
+    private static final String[] TESTS = new String[] {
+            "image/jpeg", "video/mp4", "application/pdf", "audio/mp3", "text/html",
+            "vnd.android.document/directory", "application/zip", "image/png"
+    };
+
+    public static void main(String[] args) {
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final MimeMatcher matcher = MimeMatcher.compile(FILTERS);
+
+        // Warm up so the JIT has compiled the loop before allocations are counted.
+        int matches = run(matcher);
+
+        final long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+        final long start = System.nanoTime();
+        matches += run(matcher);
+        final long elapsed = System.nanoTime() - start;
+        final long allocated = threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+
+        System.out.println(String.format("%d matches, %.2f ns/match, %.4f bytes/match",
+                matches, elapsed / (double) ITERATIONS, allocated / (double) ITERATIONS));
+
+        // A few hundred bytes of noise can come from the measurement itself.
+        if (allocated > 1024) {
+            throw new AssertionError("MimeMatcher allocated " + allocated + " bytes");
+        }
+    }
+
+    private static int run(MimeMatcher matcher) {
+        int matches = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            if (matcher.matches(TESTS[i % TESTS.length])) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.sorting;
+
+import com.android.documentsui.sorting.PermutationSorter.IndexComparator;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Host benchmark comparing the old binary insertion sort used by {@link SortingCursorWrapper}
+ * with {@link PermutationSorter}, and its parallel path at several pool sizes. Run with:
+ *
+ * <pre>
+ *   m DocumentsUISortBenchmark && DocumentsUISortBenchmark
+ * </pre>
+ */
+public final class SortBenchmark {
+
+    private static final int[] ROW_COUNTS = { 1_000, 10_000, 100_000, 1_000_000 };
+
+    /** The insertion sort is quadratic; above this many rows it takes minutes per run. */
+    private static final int MAX_INSERTION_SORT_ROWS = 100_000;
+
+    private static final int[] PARALLEL_ROW_COUNTS = { 100_000, 500_000, 1_000_000 };
+    private static final int[] PARALLEL_THREADS = { 2, 4, 8 };
+
+    private static final int WARMUP_RUNS = 3;
+    private static final int MEASURED_RUNS = 5;
+
+    public static void main(String[] args) {
+        System.out.println(String.format("%10s %20s %20s", "rows", "insertion (ms)", "merge (ms)"));
+        for (int count : ROW_COUNTS) {
+            final Dataset data = new Dataset(count, new Random(count));
+
+            final String before = count <= MAX_INSERTION_SORT_ROWS
+                    ? String.format("%.2f", measure(data, true))
+                    : "skipped";
+            final String after = String.format("%.2f", measure(data, false));
+            System.out.println(String.format("%10d %20s %20s", count, before, after));
+        }
+
+        // The speedup is bounded by the cores of the host, so report them alongside it.
+        final int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println();
+        System.out.println(String.format("Parallel sort speedup over sequential, %d core%s:",
+                cores, cores == 1 ? "" : "s"));
+        System.out.print(String.format("%10s %15s", "rows", "sequential (ms)"));
+        for (int threads : PARALLEL_THREADS) {
+            System.out.print(String.format(" %15s", threads + " threads"));
+        }
+        System.out.println();
+        for (int count : PARALLEL_ROW_COUNTS) {
+            final Dataset data = new Dataset(count, new Random(count));
+            final double sequential = measure(data, false);
+            System.out.print(String.format("%10d %15.2f", count, sequential));
+            for (int threads : PARALLEL_THREADS) {
+                final ForkJoinPool pool = new ForkJoinPool(threads);
+                try {
+                    final double parallel = measure(data, false, pool);
+                    System.out.print(String.format(" %8.2f (%.1fx)", parallel,
+                            sequential / parallel));
+                } finally {
+                    pool.shutdown();
+                }
+            }
+            System.out.println();
+        }
+    }
+
+    private static double measure(Dataset data, boolean insertionSort) {
+        return measure(data, insertionSort, null);
+    }
+
+    private static double measure(Dataset data, boolean insertionSort, ForkJoinPool pool) {
+        final int runs = data.count <= 10_000 ? 20 : MEASURED_RUNS;
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            run(data, insertionSort, pool);
+        }
+        long total = 0;
+        for (int i = 0; i < runs; i++) {
+            total += run(data, insertionSort, pool);
+        }
+        return total / (double) runs / 1_000_000;
+    }
+
+    private static long run(Dataset data, boolean insertionSort, ForkJoinPool pool) {
+        final int[] positions = new int[data.count];
+        for (int i = 0; i < data.count; i++) {
+            positions[i] = i;
+        }
+
+        final long start = System.nanoTime();
+        if (insertionSort) {
+            binarySort(data.keys.clone(), data.isDirs.clone(), positions, data.ids.clone());
+        } else {
+            final long[] keys = data.keys;
+            final boolean[] isDirs = data.isDirs;
+            final String[] ids = data.ids;
+            final IndexComparator comparator = (lhs, rhs) -> {
+                if (isDirs[lhs] != isDirs[rhs]) {
+                    return isDirs[lhs] ? -1 : 1;
+                }
+                final int compare = Long.compare(keys[lhs], keys[rhs]);
+                return compare != 0 ? compare : ids[lhs].compareTo(ids[rhs]);
+            };
+            if (pool != null) {
+                PermutationSorter.parallelSort(positions, comparator, pool);
+            } else {
+                PermutationSorter.sort(positions, comparator);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Copy of the binary insertion sort {@link SortingCursorWrapper} used before
+     * {@link PermutationSorter}, ascending only.
+     */
+    private static void binarySort(
+            long[] sortKey, boolean[] isDirs, int[] positions, String[] ids) {
+        final int count = positions.length;
+        for (int start = 1; start < count; start++) {
+            final int pivotPosition = positions[start];
+            final long pivotValue = sortKey[start];
+            final boolean pivotIsDir = isDirs[start];
+            final String pivotId = ids[start];
+
+            int left = 0;
+            int right = start;
+
+            while (left < right) {
+                int mid = ((left + right) >>> 1);
+
+                int compare;
+                final boolean rhsIsDir = isDirs[mid];
+                if (pivotIsDir && !rhsIsDir) {
+                    compare = -1;
+                } else if (!pivotIsDir && rhsIsDir) {
+                    compare = 1;
+                } else {
+                    compare = Long.compare(pivotValue, sortKey[mid]);
+                }
+                if (compare == 0) {
+                    compare = pivotId.compareTo(ids[mid]);
+                }
+
+                if (compare < 0) {
+                    right = mid;
+                } else {
+                    left = mid + 1;
+                }
+            }
+
+            int n = start - left;
+            System.arraycopy(positions, left, positions, left + 1, n);
+            System.arraycopy(sortKey, left, sortKey, left + 1, n);
+            System.arraycopy(isDirs, left, isDirs, left + 1, n);
+            System.arraycopy(ids, left, ids, left + 1, n);
+
+            positions[left] = pivotPosition;
+            sortKey[left] = pivotValue;
+            isDirs[left] = pivotIsDir;
+            ids[left] = pivotId;
+        }
+    }
+
+    /** A directory listing: ~5% directories, random sizes with plenty of ties. */
+    private static final class Dataset {
+        final int count;
+        final long[] keys;
+        final boolean[] isDirs;
+        final String[] ids;
+
+        Dataset(int count, Random rand) {
+            this.count = count;
+            keys = new long[count];
+            isDirs = new boolean[count];
+            ids = new String[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = rand.nextInt(count);
+                isDirs[i] = rand.nextInt(20) == 0;
+                ids[i] = "doc:" + i;
+            }
+        }
+    }
+}
@@ -19,6 +19,7 @@ package com.android.documentsui;
 import static com.android.documentsui.StressProvider.DEFAULT_AUTHORITY;
 import static com.android.documentsui.StressProvider.STRESS_ROOT_0_ID;
 import static com.android.documentsui.StressProvider.STRESS_ROOT_1_ID;
+import static com.android.documentsui.StressProvider.STRESS_ROOT_3_ID;
 
 import android.app.Activity;
 import android.net.Uri;
@@ -28,7 +29,9 @@ import android.os.RemoteException;
 import androidx.test.filters.LargeTest;
 
 import com.android.documentsui.BaseActivity.EventListener;
+import com.android.documentsui.base.Features;
 import com.android.documentsui.base.RootInfo;
+import com.android.documentsui.base.SnapshotCursor;
 import com.android.documentsui.files.FilesActivity;
 
 import java.util.ArrayList;
@@ -46,9 +49,18 @@ public class FilesActivityPerfTest extends ActivityTest<FilesActivity> {
     private static final String KEY_FILES_LISTED_PERFORMANCE_MEDIAN =
             "files-listed-performance-median";
 
+    private static final String KEY_LARGE_FILES_LISTED_PERFORMANCE_MEDIAN =
+            "large-files-listed-performance-median";
+
+    private static final String KEY_LARGE_FILES_LISTED_HEAP_KB =
+            "large-files-listed-heap-kb";
+
     private static final String TESTED_URI =
             "content://com.android.documentsui.stressprovider/document/STRESS_ROOT_1_DOC";
 
+    private static final String TESTED_URI_LARGE =
+            "content://com.android.documentsui.stressprovider/document/STRESS_ROOT_3_DOC";
+
     private static final int NUM_MEASUREMENTS = 10;
 
     public FilesActivityPerfTest() {
@@ -77,16 +89,61 @@ public class FilesActivityPerfTest extends ActivityTest<FilesActivity> {
     }
 
     public void testFilesListedPerformance() throws Exception {
+        final List<Long> measurements = measureListing(STRESS_ROOT_1_ID, TESTED_URI, null);
+
+        final Bundle status = new Bundle();
+        status.putDouble(KEY_FILES_LISTED_PERFORMANCE_FIRST, measurements.get(0));
+        status.putDouble(KEY_FILES_LISTED_PERFORMANCE_MEDIAN, median(measurements));
+
+        getInstrumentation().sendStatus(Activity.RESULT_OK, status);
+    }
+
+    /**
+     * Lists a 100k-row root with and without {@link SnapshotCursor}, reporting the median
+     * latency and the heap retained by the loaded directory in each mode.
+     */
+    public void testLargeFilesListedPerformance() throws Exception {
+        final Features features = getActivity().getInjector().features;
+        final Bundle status = new Bundle();
+
+        try {
+            for (boolean snapshot : new boolean[] { false, true }) {
+                features.forceFeature(R.bool.feature_directory_snapshot, snapshot);
+                final String suffix = snapshot ? "-snapshot" : "-cursor";
+
+                final long heapBefore = usedHeapKb();
+                final List<Long> heapKb = new ArrayList<>();
+                final List<Long> measurements =
+                        measureListing(STRESS_ROOT_3_ID, TESTED_URI_LARGE, heapKb);
+
+                status.putDouble(KEY_LARGE_FILES_LISTED_PERFORMANCE_MEDIAN + suffix,
+                        median(measurements));
+                status.putDouble(KEY_LARGE_FILES_LISTED_HEAP_KB + suffix,
+                        median(heapKb) - heapBefore);
+            }
+        } finally {
+            features.forceFeature(R.bool.feature_directory_snapshot, false);
+        }
+
+        getInstrumentation().sendStatus(Activity.RESULT_OK, status);
+    }
+
+    /**
+     * Opens the given root {@link #NUM_MEASUREMENTS} times and returns how long each listing
+     * took. If {@code heapKb} is given, the used heap with the listing on screen is added to it.
+     */
+    private List<Long> measureListing(String rootId, String testedUri, List<Long> heapKb)
+            throws Exception {
         final BaseActivity activity = getActivity();
 
         final List<Long> measurements = new ArrayList<Long>();
         EventListener listener;
-        for (int i = 0; i < 10; i++) {
+        for (int i = 0; i < NUM_MEASUREMENTS; i++) {
             final CountDownLatch signal = new CountDownLatch(1);
             listener = new EventListener() {
                 @Override
                 public void onDirectoryNavigated(Uri uri) {
-                    if (uri != null && TESTED_URI.equals(uri.toString())) {
+                    if (uri != null && testedUri.equals(uri.toString())) {
                         mStartTime = System.currentTimeMillis();
                     } else {
                         mStartTime = -1;
@@ -95,7 +152,7 @@ public class FilesActivityPerfTest extends ActivityTest<FilesActivity> {
 
                 @Override
                 public void onDirectoryLoaded(Uri uri) {
-                    if (uri == null || !TESTED_URI.equals(uri.toString())) {
+                    if (uri == null || !testedUri.equals(uri.toString())) {
                         return;
                     }
                     assertTrue(mStartTime != -1);
@@ -104,6 +161,9 @@ public class FilesActivityPerfTest extends ActivityTest<FilesActivity> {
                         public void run() {
                             assertTrue(mStartTime != -1);
                             measurements.add(System.currentTimeMillis() - mStartTime);
+                            if (heapKb != null) {
+                                heapKb.add(usedHeapKb());
+                            }
                             signal.countDown();
                         }
                     });
@@ -114,7 +174,7 @@ public class FilesActivityPerfTest extends ActivityTest<FilesActivity> {
 
             try {
                 activity.addEventListener(listener);
-                bots.roots.openRoot(STRESS_ROOT_1_ID);
+                bots.roots.openRoot(rootId);
                 signal.await();
             } finally {
                 activity.removeEventListener(listener);
@@ -127,16 +187,18 @@ public class FilesActivityPerfTest extends ActivityTest<FilesActivity> {
         }
 
         assertEquals(NUM_MEASUREMENTS, measurements.size());
+        return measurements;
+    }
 
-        final Bundle status = new Bundle();
-        status.putDouble(KEY_FILES_LISTED_PERFORMANCE_FIRST, measurements.get(0));
-
-        final Long[] rawMeasurements = measurements.toArray(new Long[NUM_MEASUREMENTS]);
+    private static long median(List<Long> measurements) {
+        final Long[] rawMeasurements = measurements.toArray(new Long[measurements.size()]);
         Arrays.sort(rawMeasurements);
+        return rawMeasurements[rawMeasurements.length / 2 - 1];
+    }
 
-        final long median = rawMeasurements[NUM_MEASUREMENTS / 2 - 1];
-        status.putDouble(KEY_FILES_LISTED_PERFORMANCE_MEDIAN, median);
-
-        getInstrumentation().sendStatus(Activity.RESULT_OK, status);
+    private static long usedHeapKb() {
+        final Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        return (runtime.totalMemory() - runtime.freeMemory()) / 1024;
     }
 }
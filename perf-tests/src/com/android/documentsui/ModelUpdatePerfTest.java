@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import android.app.Activity;
+import android.database.MatrixCursor;
+import android.os.Bundle;
+import android.provider.DocumentsContract.Document;
+import android.test.InstrumentationTestCase;
+
+import androidx.test.filters.LargeTest;
+
+import com.android.documentsui.roots.RootCursorWrapper;
+import com.android.documentsui.testing.TestFeatures;
+
+import java.util.Arrays;
+
+@LargeTest
+public class ModelUpdatePerfTest extends InstrumentationTestCase {
+
+    // Constants starting with KEY_ are used to report metrics to APCT.
+    private static final String KEY_LARGE_MODEL_UPDATE_MEDIAN_US =
+            "large-model-update-median-us";
+
+    private static final String[] COLUMNS = new String[] {
+        RootCursorWrapper.COLUMN_AUTHORITY,
+        Document.COLUMN_DOCUMENT_ID,
+        Document.COLUMN_DISPLAY_NAME
+    };
+
+    private static final int NUM_ROWS = 100_000;
+    private static final int NUM_MEASUREMENTS = 10;
+
+    /** Applies a 100k-row result on the main thread, reporting the median time it took. */
+    public void testLargeModelUpdatePerformance() throws Exception {
+        final Model model = new Model(new TestFeatures());
+        final long[] measurements = new long[NUM_MEASUREMENTS];
+
+        for (int i = 0; i < NUM_MEASUREMENTS; i++) {
+            final DirectoryResult result = new DirectoryResult();
+            result.setCursor(createCursor());
+
+            final int measurement = i;
+            getInstrumentation().runOnMainSync(() -> {
+                final long start = System.nanoTime();
+                model.update(result);
+                measurements[measurement] = (System.nanoTime() - start) / 1000;
+            });
+        }
+
+        Arrays.sort(measurements);
+        final Bundle status = new Bundle();
+        status.putDouble(KEY_LARGE_MODEL_UPDATE_MEDIAN_US, measurements[NUM_MEASUREMENTS / 2]);
+        getInstrumentation().sendStatus(Activity.RESULT_OK, status);
+    }
+
+    private static MatrixCursor createCursor() {
+        final MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        for (int i = 0; i < NUM_ROWS; i++) {
+            final MatrixCursor.RowBuilder row = cursor.newRow();
+            row.add(RootCursorWrapper.COLUMN_AUTHORITY, StressProvider.DEFAULT_AUTHORITY);
+            row.add(Document.COLUMN_DOCUMENT_ID, Integer.toString(i));
+            row.add(Document.COLUMN_DISPLAY_NAME, "name" + i);
+        }
+        return cursor;
+    }
+}
@@ -57,12 +57,17 @@ public class StressProvider extends DocumentsProvider {
     // Root with hundreds of files.
     public static final String STRESS_ROOT_2_ID = "STRESS_ROOT_2";
 
+    // Root with a hundred thousand files.
+    public static final String STRESS_ROOT_3_ID = "STRESS_ROOT_3";
+
     private static final String STRESS_ROOT_0_DOC_ID = "STRESS_ROOT_0_DOC";
     private static final String STRESS_ROOT_1_DOC_ID = "STRESS_ROOT_1_DOC";
     private static final String STRESS_ROOT_2_DOC_ID = "STRESS_ROOT_2_DOC";
+    private static final String STRESS_ROOT_3_DOC_ID = "STRESS_ROOT_3_DOC";
 
     private static final int STRESS_ROOT_1_ITEMS = 10000;
     private static final int STRESS_ROOT_2_ITEMS = 300;
+    private static final int STRESS_ROOT_3_ITEMS = 100000;
 
     private static final String MIME_TYPE_IMAGE = "image/jpeg";
     private static final long REFERENCE_TIMESTAMP = 1459159369359L;
@@ -117,13 +122,30 @@ public class StressProvider extends DocumentsProvider {
             children.add(document);
         }
 
+        children = new ArrayList<StubDocument>();
+        mChildDocuments.put(STRESS_ROOT_3_DOC_ID, children);
+        for (int i = 0; i < STRESS_ROOT_3_ITEMS; i++) {
+            try {
+                document = StubDocument.createFile(
+                        getContext(), MIME_TYPE_IMAGE,
+                        com.android.documentsui.perftests.R.raw.earth_small,
+                        STRESS_ROOT_1_ITEMS + STRESS_ROOT_2_ITEMS + i);
+            } catch (IOException e) {
+                return false;
+            }
+            mDocuments.put(document.id, document);
+            children.add(document);
+        }
+
         mRoots.put(STRESS_ROOT_0_ID, new StubRoot(STRESS_ROOT_0_ID, STRESS_ROOT_0_DOC_ID));
         mRoots.put(STRESS_ROOT_1_ID, new StubRoot(STRESS_ROOT_1_ID, STRESS_ROOT_1_DOC_ID));
         mRoots.put(STRESS_ROOT_2_ID, new StubRoot(STRESS_ROOT_2_ID, STRESS_ROOT_2_DOC_ID));
+        mRoots.put(STRESS_ROOT_3_ID, new StubRoot(STRESS_ROOT_3_ID, STRESS_ROOT_3_DOC_ID));
 
         mDocuments.put(STRESS_ROOT_0_DOC_ID, StubDocument.createDirectory(STRESS_ROOT_0_DOC_ID));
         mDocuments.put(STRESS_ROOT_1_DOC_ID, StubDocument.createDirectory(STRESS_ROOT_1_DOC_ID));
         mDocuments.put(STRESS_ROOT_2_DOC_ID, StubDocument.createDirectory(STRESS_ROOT_2_DOC_ID));
+        mDocuments.put(STRESS_ROOT_3_DOC_ID, StubDocument.createDirectory(STRESS_ROOT_3_DOC_ID));
 
         return true;
     }
@@ -118,6 +118,7 @@ public abstract class AbstractActionHandler<T extends FragmentActivity & CommonA
     private Runnable mDisplayStateChangedListener;
 
     private ContentLock mContentLock;
+    private final DirectoryPrefetcher mPrefetcher;
 
     @Override
     public void registerDisplayStateChangedListener(Runnable l) {
@@ -160,6 +161,11 @@ public abstract class AbstractActionHandler<T extends FragmentActivity & CommonA
         mInjector = injector;
 
         mBindings = new LoaderBindings();
+        mPrefetcher = new DirectoryPrefetcher(activity, injector.features, state,
+                injector.fileTypeLookup, injector.getListingCache(), this::getContentsUri);
+        if (injector.focusManager != null) {
+            injector.focusManager.setFocusListener(this::onDocumentFocused);
+        }
     }
 
     @Override
@@ -802,6 +808,51 @@ public abstract class AbstractActionHandler<T extends FragmentActivity & CommonA
         }
     }
 
+    @Override
+    public void sortDocumentsForCurrentStack() {
+        final Loader<DirectoryResult> loader =
+                mActivity.getSupportLoaderManager().getLoader(LOADER_ID);
+        if (loader instanceof DirectoryLoader && mLoaderSemaphore.tryAcquire()) {
+            if (((DirectoryLoader) loader).resort()) {
+                // The permit is released in onLoadFinished, as for a restarted loader.
+                return;
+            }
+            mLoaderSemaphore.release();
+        }
+        loadDocumentsForCurrentStack();
+    }
+
+    @Override
+    public void loadNextPageForCurrentStack() {
+        final Loader<DirectoryResult> loader =
+                mActivity.getSupportLoaderManager().getLoader(LOADER_ID);
+        if (loader instanceof DirectoryLoader && mLoaderSemaphore.tryAcquire()) {
+            if (((DirectoryLoader) loader).loadNextPage()) {
+                // The permit is released in onLoadFinished.
+                return;
+            }
+            mLoaderSemaphore.release();
+        }
+    }
+
+    private void onDocumentFocused(String modelId) {
+        final DocumentInfo doc = mModel.getDocument(modelId);
+        if (doc != null && mContentLock != null && !mSearchMgr.isSearching()) {
+            mPrefetcher.prefetch(doc, mContentLock);
+        }
+    }
+
+    /**
+     * Returns the URI to load the contents of a directory from.
+     */
+    private Uri getContentsUri(DocumentInfo doc) {
+        Uri contentsUri = DocumentsContract.buildChildDocumentsUri(doc.authority, doc.documentId);
+        if (mInjector.config.managedModeEnabled(mState.stack)) {
+            contentsUri = DocumentsContract.setManageMode(contentsUri);
+        }
+        return contentsUri;
+    }
+
     protected final boolean launchToDocument(Uri uri) {
         if (DEBUG) {
             Log.d(TAG, "launchToDocument() uri=" + uri);
@@ -977,6 +1028,7 @@ public abstract class AbstractActionHandler<T extends FragmentActivity & CommonA
                         contentsUri,
                         mInjector.fileTypeLookup,
                         mContentLock,
+                        mInjector.getListingCache(),
                         queryArgs);
             }
         }
@@ -990,12 +1042,25 @@ public abstract class AbstractActionHandler<T extends FragmentActivity & CommonA
             assert (result != null);
 
             mInjector.getModel().update(result);
-            mLoaderSemaphore.release();
+            releaseLoaderPermit();
+
+            if (loader instanceof DirectoryLoader && !mSearchMgr.isSearching()
+                    && result.exception == null && mContentLock != null) {
+                mPrefetcher.onDirectoryShown(mContentLock);
+            }
         }
 
         @Override
         public void onLoaderReset(Loader<DirectoryResult> loader) {
-            mLoaderSemaphore.release();
+            releaseLoaderPermit();
+        }
+
+        private void releaseLoaderPermit() {
+            // A loader may finish more than once per restart, e.g. when it shows a cached
+            // listing and then the reloaded one. Only give back the one permit.
+            if (mLoaderSemaphore.availablePermits() == 0) {
+                mLoaderSemaphore.release();
+            }
         }
     }
 
@@ -171,6 +171,18 @@ public interface ActionHandler {
 
     void loadDocumentsForCurrentStack();
 
+    /**
+     * Shows the documents of the current stack in the new sort order, re-sorting the loaded
+     * listing in memory where possible instead of loading it again.
+     */
+    void sortDocumentsForCurrentStack();
+
+    /**
+     * Loads the next page of the documents of the current stack, if they are loaded page by
+     * page and more are available.
+     */
+    void loadNextPageForCurrentStack();
+
     void viewInOwner();
 
     void setDebugMode(boolean enabled);
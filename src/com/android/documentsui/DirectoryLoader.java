@@ -21,9 +21,12 @@ import static com.android.documentsui.base.SharedMinimal.VERBOSE;
 import android.content.ContentProviderClient;
 import android.content.ContentResolver;
 import android.content.Context;
+import android.database.ContentObserver;
 import android.database.Cursor;
+import android.database.CursorWrapper;
 import android.database.MergeCursor;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.CancellationSignal;
 import android.os.FileUtils;
@@ -33,6 +36,7 @@ import android.provider.DocumentsContract;
 import android.provider.DocumentsContract.Document;
 import android.util.Log;
 
+import androidx.annotation.GuardedBy;
 import androidx.annotation.Nullable;
 import androidx.loader.content.AsyncTaskLoader;
 
@@ -44,23 +48,37 @@ import com.android.documentsui.base.FilteringCursorWrapper;
 import com.android.documentsui.base.Lookup;
 import com.android.documentsui.base.MimeTypes;
 import com.android.documentsui.base.RootInfo;
+import com.android.documentsui.base.SnapshotCursor;
 import com.android.documentsui.base.State;
 import com.android.documentsui.base.UserId;
 import com.android.documentsui.roots.RootCursorWrapper;
 import com.android.documentsui.sorting.SortModel;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 public class DirectoryLoader extends AsyncTaskLoader<DirectoryResult> {
 
     private static final String TAG = "DirectoryLoader";
+
+    /** Rows fetched per page when the provider supports paging. */
+    private static final int PAGE_SIZE = 500;
+    /**
+     * Time to wait for the other profiles of a cross-profile search once the current profile
+     * answered, before showing its results without them.
+     */
+    private static final int MAX_OTHER_USERS_WAIT_MILLIS = 500;
     private static final String[] SEARCH_REJECT_MIMES = new String[]{Document.MIME_TYPE_DIR};
     private static final String[] PHOTO_PICKING_ACCEPT_MIMES = new String[]
             {Document.MIME_TYPE_DIR, MimeTypes.IMAGE_MIME};
 
     private final LockingContentObserver mObserver;
+    private final ContentLock mContentLock;
+    private final @Nullable ListingCache mListingCache;
     private final RootInfo mRoot;
     private final State mState;
     private final Uri mUri;
@@ -74,6 +92,35 @@ public class DirectoryLoader extends AsyncTaskLoader<DirectoryResult> {
     private DocumentInfo mDoc;
     private CancellationSignal mSignal;
     private DirectoryResult mResult;
+    @GuardedBy("this")
+    private @Nullable DirectoryResult mResortSource;
+
+    // Pages of a paged listing, filtered and copied, in the provider's order. They are owned by
+    // the loader rather than by the results, so that the next result can reuse them. Each
+    // result reads them through shares of its own, as the UI may read the delivered result
+    // while the next one is built.
+    @GuardedBy("this")
+    private final List<SnapshotCursor> mPages = new ArrayList<>();
+    // Pages, or cursors of profiles, no longer in the listing, but maybe still used by the
+    // delivered result.
+    @GuardedBy("this")
+    private final List<Cursor> mRetiredPages = new ArrayList<>();
+    // Rows fetched from the provider into mPages, before filtering; the offset of the next page.
+    @GuardedBy("this")
+    private int mPagedRowCount;
+    @GuardedBy("this")
+    private int mTotalCount = -1;
+    @GuardedBy("this")
+    private boolean mHasMorePages;
+    @GuardedBy("this")
+    private boolean mNextPageRequested;
+    // Set once a page came back out of our sort order, after which the listing is loaded whole.
+    private volatile boolean mPagesUnsorted;
+
+    // The queries of a cross-profile search, which run concurrently. Profiles answering late are
+    // merged by a follow-up load.
+    @GuardedBy("this")
+    private @Nullable UserQueries mUserQueries;
 
     private Features mFeatures;
 
@@ -84,19 +131,41 @@ public class DirectoryLoader extends AsyncTaskLoader<DirectoryResult> {
             Uri uri,
             Lookup<String, String> fileTypeLookup,
             ContentLock lock,
+            @Nullable ListingCache listingCache,
+            Bundle queryArgs) {
+        this(features, context, state, state.stack.getRoot(), state.stack.peek(), uri,
+                fileTypeLookup, lock, listingCache, queryArgs);
+    }
+
+    /**
+     * Creates a loader for the directory {@code doc} of {@code root} rather than for the top
+     * of the stack.
+     */
+    DirectoryLoader(
+            Features features,
+            Context context,
+            State state,
+            RootInfo root,
+            @Nullable DocumentInfo doc,
+            Uri uri,
+            Lookup<String, String> fileTypeLookup,
+            ContentLock lock,
+            @Nullable ListingCache listingCache,
             Bundle queryArgs) {
 
         super(context);
         mFeatures = features;
         mState = state;
-        mRoot = state.stack.getRoot();
+        mRoot = root;
         mUri = uri;
         mModel = state.sortModel;
-        mDoc = state.stack.peek();
+        mDoc = doc;
         mFileTypeLookup = fileTypeLookup;
         mSearchMode = queryArgs != null;
         mQueryArgs = queryArgs;
         mObserver = new LockingContentObserver(lock, this::onContentChanged);
+        mContentLock = lock;
+        mListingCache = listingCache;
         mPhotoPicking = state.isPhotoPicking();
     }
 
@@ -114,6 +183,16 @@ public class DirectoryLoader extends AsyncTaskLoader<DirectoryResult> {
             mSignal = new CancellationSignal();
         }
 
+        final ListingCache.Key cacheKey = createCacheKey();
+        final DirectoryResult resorted = resortInBackground();
+        if (resorted != null) {
+            synchronized (this) {
+                mSignal = null;
+            }
+            resorted.cacheKey = cacheKey;
+            return resorted;
+        }
+
         final String authority = mUri.getAuthority();
 
         final DirectoryResult result = new DirectoryResult();
@@ -163,39 +242,96 @@ public class DirectoryLoader extends AsyncTaskLoader<DirectoryResult> {
                 result.client = client;
             }
 
-            if (mFeatures.isContentPagingEnabled()) {
-                // TODO: At some point we don't want forced flags to override real paging...
-                // and that point is when we have real paging.
-                DebugFlags.addForcedPagingArgs(queryArgs);
+            boolean paging = isPagingEnabled();
+            if (mFeatures.isContentPagingEnabled() && DebugFlags.addForcedPagingArgs(queryArgs)) {
+                // Forced paging from the debug command overrides real paging.
+                paging = false;
             }
-
-            cursor = queryOnUsers(userIds, authority, queryArgs);
-
-            if (cursor == null) {
-                throw new RemoteException("Provider returned null");
+            final boolean nextPage;
+            final int limit;
+            synchronized (this) {
+                nextPage = paging && mNextPageRequested && mHasMorePages;
+                mNextPageRequested = false;
+                // Reloading a paged listing fetches all the rows loaded so far at once, so the
+                // list doesn't shrink under the user.
+                limit = nextPage ? PAGE_SIZE : Math.max(PAGE_SIZE, mPagedRowCount);
+                if (paging) {
+                    queryArgs.putInt(
+                            ContentResolver.QUERY_ARG_OFFSET, nextPage ? mPagedRowCount : 0);
+                    queryArgs.putInt(ContentResolver.QUERY_ARG_LIMIT, limit);
+                }
             }
-            cursor.registerContentObserver(mObserver);
 
-            FilteringCursorWrapper filteringCursor = new FilteringCursorWrapper(cursor);
-            filteringCursor.filterHiddenFiles(mState.showHiddenFiles);
-            if (mSearchMode && !mFeatures.isFoldersInSearchResultsEnabled()) {
-                // There is no findDocumentPath API. Enable filtering on folders in search mode.
-                filteringCursor.filterMimes(/* acceptMimes= */ null, SEARCH_REJECT_MIMES);
+            cursor = query(userIds, authority, queryArgs);
+
+            if (paging && !isPagingHonored(cursor.getExtras())) {
+                paging = false;
+                if (isHonored(cursor.getExtras(), ContentResolver.QUERY_ARG_LIMIT)) {
+                    // The provider returned only some of the rows, but we can't tell which, or
+                    // fetch the others in a matching order. Load them all instead.
+                    cursor.close();
+                    queryArgs.remove(ContentResolver.QUERY_ARG_OFFSET);
+                    queryArgs.remove(ContentResolver.QUERY_ARG_LIMIT);
+                    cursor = query(userIds, authority, queryArgs);
+                }
             }
-            if (mPhotoPicking) {
-                filteringCursor.filterMimes(PHOTO_PICKING_ACCEPT_MIMES, /* rejectMimes= */ null);
+
+            final DirectoryResult previous = mResult;
+            int[] previousPositions = null;
+            if (paging) {
+                final Cursor pages = addPage(cursor, nextPage, limit);
+                if (pages != null) {
+                    cursor = pages;
+                } else {
+                    // The provider's order differs from ours, e.g. in its collation or where it
+                    // puts directories, so its pages can't be concatenated. Load all the rows
+                    // and sort them instead.
+                    paging = false;
+                    cursor.close();
+                    queryArgs.remove(ContentResolver.QUERY_ARG_OFFSET);
+                    queryArgs.remove(ContentResolver.QUERY_ARG_LIMIT);
+                    cursor = query(userIds, authority, queryArgs);
+                }
             }
-            cursor = filteringCursor;
+            if (!paging) {
+                synchronized (this) {
+                    retirePagesLocked();
+                }
+                cursor = filter(cursor);
+                if (mFeatures.isDirectorySnapshotEnabled() || cacheKey != null) {
+                    // Read the shown rows once; every layer above reads the in-memory copy,
+                    // which the listing cache keeps without the provider's cursor.
+                    cursor = SnapshotCursor.copyOf(cursor);
+                }
 
-            // TODO: When API tweaks have landed, use ContentResolver.EXTRA_HONORED_ARGS
-            // instead of checking directly for ContentResolver.QUERY_ARG_SORT_COLUMNS (won't work)
-            if (mFeatures.isContentPagingEnabled()
-                    && cursor.getExtras().containsKey(ContentResolver.QUERY_ARG_SORT_COLUMNS)) {
-                if (VERBOSE) Log.d(TAG, "Skipping sort of pre-sorted cursor. Booya!");
+                final Cursor extended = isStreamedUpdate(previous, cursor)
+                        ? mModel.extendSortedCursor(previous.getCursor(), cursor, mFileTypeLookup)
+                        : null;
+                if (extended != null) {
+                    previousPositions =
+                            SortModel.mapExtendedPositions(previous.getCursor(), extended);
+                    cursor = extended;
+                } else if (isSortHonored(cursor.getExtras())) {
+                    // The provider says it sorted the rows, but its collation or handling of
+                    // directories may differ from ours, so check the order before trusting it.
+                    final Cursor sorted = mModel.sortCursorIfUnsorted(cursor, mFileTypeLookup);
+                    if (VERBOSE && sorted == cursor) {
+                        Log.d(TAG, "Skipping sort of pre-sorted cursor. Booya!");
+                    }
+                    cursor = sorted;
+                } else {
+                    cursor = mModel.sortCursor(cursor, mFileTypeLookup);
+                }
+            }
+            if (previousPositions != null) {
+                result.setExtendedCursor(cursor, previous, previousPositions);
             } else {
-                cursor = mModel.sortCursor(cursor, mFileTypeLookup);
+                result.setCursor(cursor);
+            }
+            result.diffFrom(previous);
+            if (!paging && !isLoading(cursor.getExtras())) {
+                result.cacheKey = cacheKey;
             }
-            result.setCursor(cursor);
         } catch (Exception e) {
             Log.w(TAG, "Failed to query", e);
             result.exception = e;
@@ -209,6 +345,251 @@ public class DirectoryLoader extends AsyncTaskLoader<DirectoryResult> {
         return result;
     }
 
+    /**
+     * Queries the provider, and registers for changes to the returned rows.
+     */
+    private Cursor query(List<UserId> userIds, String authority, Bundle queryArgs)
+            throws RemoteException {
+        Cursor cursor = queryOnUsers(userIds, authority, queryArgs);
+
+        if (cursor == null) {
+            throw new RemoteException("Provider returned null");
+        }
+        cursor.registerContentObserver(mObserver);
+        return cursor;
+    }
+
+    /**
+     * Hides the rows that shouldn't be shown in the current state.
+     */
+    private Cursor filter(Cursor cursor) {
+        FilteringCursorWrapper filteringCursor = new FilteringCursorWrapper(cursor);
+        filteringCursor.filterHiddenFiles(mState.showHiddenFiles);
+        if (mSearchMode && !mFeatures.isFoldersInSearchResultsEnabled()) {
+            // There is no findDocumentPath API. Enable filtering on folders in search mode.
+            filteringCursor.filterMimes(/* acceptMimes= */ null, SEARCH_REJECT_MIMES);
+        }
+        if (mPhotoPicking) {
+            filteringCursor.filterMimes(PHOTO_PICKING_ACCEPT_MIMES, /* rejectMimes= */ null);
+        }
+        return filteringCursor;
+    }
+
+    /**
+     * Returns whether the directory may be loaded page by page. Search results may merge
+     * several profiles, and archives are opened whole anyway.
+     */
+    private boolean isPagingEnabled() {
+        return mFeatures.isContentPagingEnabled()
+                && !mPagesUnsorted
+                && !mSearchMode
+                && (mDoc == null || !mDoc.isInArchive());
+    }
+
+    /**
+     * Adds a page fetched from the provider to the paged listing, and returns a cursor over all
+     * the pages loaded so far. The pages are concatenated, so each is checked to be in our sort
+     * order, and to follow the last row of the page before it.
+     *
+     * @param nextPage whether the page follows the loaded pages, rather than replacing them
+     * @param limit the number of rows requested
+     * @return the cursor over the pages, or null if the page is out of order, in which case the
+     *         listing can't be paged and the page isn't added
+     */
+    private @Nullable Cursor addPage(Cursor page, boolean nextPage, int limit) {
+        final Bundle pageExtras = page.getExtras();
+        final int pageRowCount = page.getCount();
+        final SnapshotCursor filtered = SnapshotCursor.copyOf(filter(page));
+
+        final Cursor lastPage;
+        synchronized (this) {
+            lastPage = nextPage && !mPages.isEmpty()
+                    ? mPages.get(mPages.size() - 1).share()
+                    : null;
+        }
+        final Cursor checked = lastPage != null
+                ? mModel.mergeSortedCursors(new Cursor[] { lastPage, filtered.share() })
+                : filtered.share();
+        if (!mModel.isSorted(checked, mFileTypeLookup)) {
+            Log.w(TAG, "Provider pages are not in sort order, loading " + mUri + " whole");
+            mPagesUnsorted = true;
+            // Leaves the provider cursor to the caller, which closes it.
+            return null;
+        }
+
+        final Cursor[] pages;
+        final int totalCount;
+        final boolean hasMorePages;
+        synchronized (this) {
+            if (!nextPage) {
+                retirePagesLocked();
+            }
+            mPages.add(filtered);
+            mPagedRowCount += pageRowCount;
+            mTotalCount = pageExtras != null
+                    ? pageExtras.getInt(ContentResolver.EXTRA_TOTAL_COUNT, -1)
+                    : -1;
+            // Without a total count, a full page means there may be more rows.
+            mHasMorePages = mTotalCount >= 0
+                    ? mPagedRowCount < mTotalCount
+                    : pageRowCount >= limit;
+
+            pages = new Cursor[mPages.size()];
+            for (int i = 0; i < pages.length; i++) {
+                pages[i] = mPages.get(i).share();
+            }
+            totalCount = mTotalCount;
+            hasMorePages = mHasMorePages;
+        }
+
+        // The provider sorted the pages, so they are concatenated rather than sorted again.
+        final Cursor cursor = mModel.mergeSortedCursors(pages);
+        final Bundle extras = new Bundle();
+        if (pageExtras != null) {
+            extras.putAll(pageExtras);
+        }
+        extras.putInt(ContentResolver.EXTRA_TOTAL_COUNT, totalCount);
+        extras.putBoolean(Model.EXTRA_HAS_MORE_PAGES, hasMorePages);
+        cursor.setExtras(extras);
+        return cursor;
+    }
+
+    /**
+     * Drops the pages of the paged listing. They are closed once the result using them is
+     * replaced, see {@link #deliverResult}.
+     */
+    @GuardedBy("this")
+    private void retirePagesLocked() {
+        mRetiredPages.addAll(mPages);
+        mPages.clear();
+        mPagedRowCount = 0;
+        mTotalCount = -1;
+        mHasMorePages = false;
+    }
+
+    private void closeRetiredPages() {
+        final List<Cursor> retired;
+        synchronized (this) {
+            retired = new ArrayList<>(mRetiredPages);
+            mRetiredPages.clear();
+        }
+        for (Cursor page : retired) {
+            FileUtils.closeQuietly(page);
+        }
+    }
+
+    /**
+     * Loads the next page of a paged listing, and delivers a result with all the rows loaded so
+     * far. Must be called on the main thread.
+     *
+     * @return whether loading the page was started
+     */
+    public boolean loadNextPage() {
+        if (!isStarted()) {
+            return false;
+        }
+        synchronized (this) {
+            if (!mHasMorePages) {
+                return false;
+            }
+            mNextPageRequested = true;
+        }
+        forceLoad();
+        return true;
+    }
+
+    /**
+     * Returns whether the provider reports having applied the sort args from
+     * {@link SortModel#addQuerySortArgs}.
+     */
+    private static boolean isSortHonored(@Nullable Bundle extras) {
+        return isHonored(extras, ContentResolver.QUERY_ARG_SORT_COLUMNS);
+    }
+
+    /**
+     * Returns whether the provider reports having applied the offset, limit and sort args, so
+     * that further pages can be fetched in the same order.
+     */
+    private static boolean isPagingHonored(@Nullable Bundle extras) {
+        return isHonored(extras, ContentResolver.QUERY_ARG_OFFSET)
+                && isHonored(extras, ContentResolver.QUERY_ARG_LIMIT)
+                && isSortHonored(extras);
+    }
+
+    private static boolean isHonored(@Nullable Bundle extras, String queryArg) {
+        if (extras == null) {
+            return false;
+        }
+        final String[] honoredArgs = extras.getStringArray(ContentResolver.EXTRA_HONORED_ARGS);
+        return honoredArgs != null && Arrays.asList(honoredArgs).contains(queryArg);
+    }
+
+    /**
+     * Returns whether {@code cursor} is a further update of a listing the provider was still
+     * loading when {@code previous} was loaded, in which case the rows are likely those of
+     * {@code previous} with more appended, and only the new ones need sorting. Once loading
+     * finishes, the listing is sorted in full again, which also picks up changes to rows that
+     * were already loaded.
+     */
+    private static boolean isStreamedUpdate(@Nullable DirectoryResult previous, Cursor cursor) {
+        return previous != null
+                && previous.exception == null
+                && previous.getCursor() != null
+                && isLoading(previous.getCursor().getExtras())
+                && isLoading(cursor.getExtras());
+    }
+
+    private static boolean isLoading(@Nullable Bundle extras) {
+        return extras != null && extras.getBoolean(DocumentsContract.EXTRA_LOADING, false);
+    }
+
+    /**
+     * Re-sorts the current result in the sort model's new order, reusing its rows instead of
+     * querying the provider again. Must be called on the main thread.
+     *
+     * @return whether the re-sort was started. If not, the loader has to be restarted.
+     */
+    public boolean resort() {
+        if (!isStarted() || mResult == null || mResult.exception != null
+                || mResult.getCursor() == null || (mDoc != null && mDoc.isInArchive())) {
+            // Results from archives hold the archive open, and release it when closed.
+            return false;
+        }
+        synchronized (this) {
+            if (!mPages.isEmpty()) {
+                // Paged listings are sorted by the provider, and only partly loaded.
+                return false;
+            }
+            mResortSource = mResult;
+        }
+        forceLoad();
+        return true;
+    }
+
+    private @Nullable DirectoryResult resortInBackground() {
+        final DirectoryResult source;
+        synchronized (this) {
+            source = mResortSource;
+            mResortSource = null;
+        }
+        if (source == null) {
+            return null;
+        }
+
+        final Cursor previous = source.getCursor();
+        final Cursor cursor =
+                previous == null ? null : mModel.resortCursor(previous, mFileTypeLookup);
+        if (cursor == null) {
+            return null;
+        }
+
+        final DirectoryResult result = new DirectoryResult();
+        result.doc = mDoc;
+        result.setResortedCursor(
+                cursor, source, SortModel.mapResortedPositions(previous, cursor));
+        return result;
+    }
+
     private boolean shouldSearchAcrossProfile() {
         return mState.supportsCrossProfile()
                 && mRoot.supportsCrossProfile()
@@ -218,33 +599,132 @@ public class DirectoryLoader extends AsyncTaskLoader<DirectoryResult> {
     @Nullable
     private Cursor queryOnUsers(List<UserId> userIds, String authority, Bundle queryArgs)
             throws RemoteException {
+        if (userIds.size() > 1) {
+            return queryOnUsersConcurrently(userIds, authority, queryArgs);
+        }
+        try {
+            return queryOnUser(userIds.get(0), authority, queryArgs, mSignal);
+        } catch (RemoteException e) {
+            Log.d(TAG, "Failed to query for user " + userIds.get(0), e);
+            // Searching on other profile may not succeed because profile may be in quiet mode.
+            if (UserId.CURRENT_USER.equals(userIds.get(0))) {
+                throw e;
+            }
+            return null;
+        }
+    }
+
+    private @Nullable Cursor queryOnUser(UserId userId, String authority, Bundle queryArgs,
+            CancellationSignal signal) throws RemoteException {
+        try (ContentProviderClient userClient =
+                     DocumentsApplication.acquireUnstableProviderOrThrow(
+                             userId.getContentResolver(getContext()), authority)) {
+            Cursor c = userClient.query(mUri, /* projection= */null, queryArgs, signal);
+            return c == null
+                    ? null
+                    : new RootCursorWrapper(userId, mUri.getAuthority(), mRoot.rootId, c,
+                            /* maxCount= */-1);
+        }
+    }
+
+    /**
+     * Queries all profiles at once, and returns the results of those that answered: the
+     * current profile, and the others that answered within {@link #MAX_OTHER_USERS_WAIT_MILLIS}
+     * after it. If some are still missing, the cursor reports {@link
+     * DocumentsContract#EXTRA_LOADING}, and the loader loads again, without querying, once they
+     * answer.
+     */
+    private @Nullable Cursor queryOnUsersConcurrently(List<UserId> userIds, String authority,
+            Bundle queryArgs) throws RemoteException {
+        final UserQueries queries;
+        final boolean followUp;
+        synchronized (this) {
+            followUp = mUserQueries != null && !mUserQueries.complete;
+            if (!followUp) {
+                retireUserQueriesLocked();
+                mUserQueries = new UserQueries(userIds, authority, queryArgs);
+            }
+            queries = mUserQueries;
+        }
+        if (!followUp) {
+            for (UserQuery query : queries.queries) {
+                ExecutorStats.execute(
+                        AsyncTask.THREAD_POOL_EXECUTOR, authority, "cross-profile query", query);
+            }
+            try {
+                // Personal results don't wait for a slow or quiet work profile, and vice versa.
+                final UserQuery current = queries.find(UserId.CURRENT_USER);
+                (current != null ? current.done : queries.allDone).await();
+                queries.allDone.await(MAX_OTHER_USERS_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new OperationCanceledException();
+            }
+        }
+
         final List<Cursor> cursors = new ArrayList<>(userIds.size());
-        for (UserId userId : userIds) {
-            try (ContentProviderClient userClient =
-                         DocumentsApplication.acquireUnstableProviderOrThrow(
-                                 userId.getContentResolver(getContext()), authority)) {
-                Cursor c = userClient.query(mUri, /* projection= */null, queryArgs, mSignal);
-                if (c != null) {
-                    cursors.add(new RootCursorWrapper(userId, mUri.getAuthority(), mRoot.rootId,
-                            c, /* maxCount= */-1));
-                }
-            } catch (RemoteException e) {
-                Log.d(TAG, "Failed to query for user " + userId, e);
-                // Searching on other profile may not succeed because profile may be in quiet mode.
-                if (UserId.CURRENT_USER.equals(userId)) {
-                    throw e;
+        boolean allDone = true;
+        synchronized (this) {
+            queries.waited = true;
+            for (UserQuery query : queries.queries) {
+                if (query.done.getCount() > 0) {
+                    allDone = false;
+                } else if (query.exception != null) {
+                    Log.d(TAG, "Failed to query for user " + query.userId, query.exception);
+                    // Searching on other profile may not succeed because profile may be in quiet
+                    // mode.
+                    if (UserId.CURRENT_USER.equals(query.userId)
+                            || !(query.exception instanceof RemoteException)) {
+                        queries.complete = true;
+                        throwUnchecked(query.exception);
+                    }
+                } else if (query.cursor != null) {
+                    // Each result reads the rows of a profile at a position of its own, as the
+                    // UI may still read the previous result while this one is loaded.
+                    cursors.add(new UserCursorWrapper(query.cursor.share()));
                 }
             }
+            queries.complete = allDone;
         }
-        int size = cursors.size();
-        switch (size) {
-            case 0:
-                return null;
-            case 1:
-                return cursors.get(0);
-            default:
-                return new MergeCursor(cursors.toArray(new Cursor[size]));
+
+        if (allDone && cursors.isEmpty()) {
+            return null;
         }
+        final Cursor cursor = new MergeCursor(cursors.toArray(new Cursor[cursors.size()]));
+        if (!allDone) {
+            final Bundle extras = new Bundle();
+            extras.putBoolean(DocumentsContract.EXTRA_LOADING, true);
+            cursor.setExtras(extras);
+        }
+        return cursor;
+    }
+
+    private static void throwUnchecked(Exception e) throws RemoteException {
+        if (e instanceof RemoteException) {
+            throw (RemoteException) e;
+        } else if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        throw new RuntimeException(e);
+    }
+
+    /**
+     * Cancels the running queries of a cross-profile search, and drops their cursors. They are
+     * closed once the result using them is replaced, see {@link #deliverResult}.
+     */
+    @GuardedBy("this")
+    private void retireUserQueriesLocked() {
+        if (mUserQueries == null) {
+            return;
+        }
+        mUserQueries.retired = true;
+        for (UserQuery query : mUserQueries.queries) {
+            query.signal.cancel();
+            if (query.cursor != null) {
+                mRetiredPages.add(query.cursor);
+            }
+        }
+        mUserQueries = null;
     }
 
     @Override
@@ -255,6 +735,10 @@ public class DirectoryLoader extends AsyncTaskLoader<DirectoryResult> {
             if (mSignal != null) {
                 mSignal.cancel();
             }
+            if (mUserQueries != null && !mUserQueries.complete) {
+                // The next load queries again.
+                retireUserQueriesLocked();
+            }
         }
     }
 
@@ -273,20 +757,75 @@ public class DirectoryLoader extends AsyncTaskLoader<DirectoryResult> {
 
         if (oldResult != null && oldResult != result) {
             FileUtils.closeQuietly(oldResult);
+            closeRetiredPages();
+        }
+        if (oldResult != result && result.cacheKey != null && result.exception == null) {
+            mListingCache.put(result.cacheKey, result, mContentLock);
         }
     }
 
     @Override
     protected void onStartLoading() {
+        boolean revalidate = false;
+        if (mResult == null) {
+            // Show the listing as it was last loaded, if it was, while loading it again.
+            mResult = getCachedResult();
+            revalidate = mResult != null;
+        }
         boolean isCursorStale = checkIfCursorStale(mResult);
         if (mResult != null && !isCursorStale) {
             deliverResult(mResult);
         }
-        if (takeContentChanged() || mResult == null || isCursorStale) {
+        if (revalidate || takeContentChanged() || mResult == null || isCursorStale) {
             forceLoad();
         }
     }
 
+    /**
+     * Loads the listing once on the calling thread, outside of a LoaderManager, for the listing
+     * cache. Can be cancelled by {@link #cancelLoadInBackground}.
+     *
+     * @return the result to cache, owned by the caller, or null if the listing can't be cached
+     */
+    @Nullable DirectoryResult loadForCacheInBackground() {
+        final DirectoryResult result = loadInBackground();
+        if (result.getCursor() != null) {
+            // The cache watches the rows itself.
+            result.getCursor().unregisterContentObserver(mObserver);
+        }
+        if (result.cacheKey == null || result.exception != null) {
+            FileUtils.closeQuietly(result);
+            synchronized (this) {
+                retirePagesLocked();
+            }
+            closeRetiredPages();
+            return null;
+        }
+        return result;
+    }
+
+    private @Nullable DirectoryResult getCachedResult() {
+        final ListingCache.Key key = createCacheKey();
+        final DirectoryResult result = key != null ? mListingCache.get(key) : null;
+        if (result != null) {
+            // Reloads on changes, like the rows this loader queried itself.
+            result.getCursor().registerContentObserver(mObserver);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the key the listing is cached by, or null if it isn't cached. Search results
+     * and archives aren't.
+     */
+    @Nullable ListingCache.Key createCacheKey() {
+        if (mListingCache == null || mSearchMode || mDoc == null || mDoc.isInArchive()) {
+            return null;
+        }
+        return new ListingCache.Key(mRoot.userId, mUri, mModel.getSortedDimensionId(),
+                mModel.getCurrentSortDirection(), mState.showHiddenFiles, mState.acceptMimes);
+    }
+
     @Override
     protected void onStopLoading() {
         cancelLoad();
@@ -310,24 +849,16 @@ public class DirectoryLoader extends AsyncTaskLoader<DirectoryResult> {
 
         FileUtils.closeQuietly(mResult);
         mResult = null;
+
+        synchronized (this) {
+            retirePagesLocked();
+            retireUserQueriesLocked();
+        }
+        closeRetiredPages();
     }
 
     private boolean checkIfCursorStale(DirectoryResult result) {
-        if (result == null || result.getCursor() == null || result.getCursor().isClosed()) {
-            return true;
-        }
-        Cursor cursor = result.getCursor();
-        try {
-            cursor.moveToPosition(-1);
-            for (int pos = 0; pos < cursor.getCount(); ++pos) {
-                if (!cursor.moveToNext()) {
-                    return true;
-                }
-            }
-        } catch (Exception e) {
-            return true;
-        }
-        return false;
+        return result == null || result.isStale();
     }
 
     private List<UserId> getUserIds() {
@@ -336,4 +867,117 @@ public class DirectoryLoader extends AsyncTaskLoader<DirectoryResult> {
         }
         return DocumentsApplication.getUserIdManager(getContext()).getUserIds();
     }
+
+    /** The concurrent queries of a cross-profile search, one per profile. */
+    private final class UserQueries {
+        final List<UserQuery> queries = new ArrayList<>();
+        final CountDownLatch allDone;
+        // Whether a load waited for the queries, so that later answers need a follow-up load.
+        @GuardedBy("DirectoryLoader.this")
+        boolean waited;
+        // Whether a load merged all the answers, so that the next load queries again.
+        @GuardedBy("DirectoryLoader.this")
+        boolean complete;
+        @GuardedBy("DirectoryLoader.this")
+        boolean retired;
+
+        UserQueries(List<UserId> userIds, String authority, Bundle queryArgs) {
+            allDone = new CountDownLatch(userIds.size());
+            for (UserId userId : userIds) {
+                queries.add(new UserQuery(this, userId, authority, queryArgs));
+            }
+        }
+
+        @Nullable UserQuery find(UserId userId) {
+            for (UserQuery query : queries) {
+                if (query.userId.equals(userId)) {
+                    return query;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final class UserQuery implements Runnable {
+        final UserId userId;
+        final CancellationSignal signal = new CancellationSignal();
+        final CountDownLatch done = new CountDownLatch(1);
+        private final UserQueries mQueries;
+        private final String mAuthority;
+        private final Bundle mQueryArgs;
+        // The rows of the profile, copied once the query finished. Owned by the loader, see
+        // retireUserQueriesLocked.
+        @GuardedBy("DirectoryLoader.this")
+        @Nullable SnapshotCursor cursor;
+        @GuardedBy("DirectoryLoader.this")
+        @Nullable Exception exception;
+
+        UserQuery(UserQueries queries, UserId userId, String authority, Bundle queryArgs) {
+            mQueries = queries;
+            this.userId = userId;
+            mAuthority = authority;
+            mQueryArgs = queryArgs;
+        }
+
+        @Override
+        public void run() {
+            SnapshotCursor c = null;
+            Exception e = null;
+            try {
+                if (!signal.isCanceled()) {
+                    final Cursor userCursor =
+                            queryOnUser(userId, mAuthority, mQueryArgs, signal);
+                    if (userCursor != null) {
+                        // Read the provider cursor here, on its own thread, and never again.
+                        c = SnapshotCursor.copyOf(userCursor);
+                    }
+                }
+            } catch (Exception ex) {
+                e = ex;
+            }
+
+            final boolean late;
+            synchronized (DirectoryLoader.this) {
+                if (mQueries.retired) {
+                    FileUtils.closeQuietly(c);
+                    c = null;
+                } else if (c != null) {
+                    // Registered once here, as the cursor is shared by the following results.
+                    c.registerContentObserver(mObserver);
+                }
+                cursor = c;
+                exception = e;
+                done.countDown();
+                mQueries.allDone.countDown();
+                late = mQueries.waited && !mQueries.complete && !mQueries.retired;
+            }
+            if (late) {
+                mObserver.dispatchChange(false, null);
+            }
+        }
+    }
+
+    /**
+     * A cursor over the rows of a profile, shared by the results of a cross-profile search. The
+     * loader closes the rows and watches them for changes.
+     */
+    private static final class UserCursorWrapper extends CursorWrapper {
+        UserCursorWrapper(Cursor cursor) {
+            super(cursor);
+        }
+
+        @Override
+        public void close() {
+            // Ignored, the loader closes the cursor.
+        }
+
+        @Override
+        public void registerContentObserver(ContentObserver observer) {
+            // Ignored, the loader registered for changes already.
+        }
+
+        @Override
+        public void unregisterContentObserver(ContentObserver observer) {
+        }
+    }
 }
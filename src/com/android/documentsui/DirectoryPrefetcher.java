@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import static com.android.documentsui.base.SharedMinimal.DEBUG;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.FileUtils;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.android.documentsui.ProviderExecutor.Preemptable;
+import com.android.documentsui.base.DocumentInfo;
+import com.android.documentsui.base.DocumentStack;
+import com.android.documentsui.base.Features;
+import com.android.documentsui.base.Lookup;
+import com.android.documentsui.base.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Loads the directories the user is likely to open next into the {@link ListingCache} while
+ * the provider would otherwise be idle, so that they show at once when opened. The candidates
+ * are the focused directory, the children of the current directory opened most often before,
+ * and the parent of a directory deep in the stack.
+ *
+ * <p>Prefetches run on the {@link ProviderExecutor} of their authority as speculative
+ * {@link Preemptable} tasks, so any load the user is waiting for cancels them rather than
+ * queueing behind them.
+ * Must be used on the main thread.
+ */
+final class DirectoryPrefetcher {
+
+    private static final String TAG = "DirectoryPrefetcher";
+
+    private static final int MAX_PREFETCHES = 3;
+    // Children of the current directory opened before that are prefetched.
+    private static final int MAX_CHILD_CANDIDATES = 2;
+    // From this stack size on, the parent directory is prefetched.
+    private static final int MIN_PARENT_DEPTH = 3;
+    // Directories whose opened children are remembered.
+    private static final int MAX_VISITED_PARENTS = 32;
+
+    private final Context mContext;
+    private final Features mFeatures;
+    private final State mState;
+    private final Lookup<String, String> mFileTypeLookup;
+    private final ListingCache mCache;
+    private final Function<DocumentInfo, Uri> mContentsUriBuilder;
+
+    private final List<PrefetchTask> mTasks = new ArrayList<>();
+    private @Nullable DocumentInfo mShownDoc;
+
+    // How often each child was opened from its parent, by parent URI, least recently visited
+    // parent first.
+    private final Map<Uri, Map<Uri, Visit>> mVisits =
+            new LinkedHashMap<Uri, Map<Uri, Visit>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Uri, Map<Uri, Visit>> eldest) {
+                    return size() > MAX_VISITED_PARENTS;
+                }
+            };
+
+    /**
+     * @param contentsUriBuilder builds the URI the contents of a directory are loaded from
+     */
+    DirectoryPrefetcher(Context context, Features features, State state,
+            Lookup<String, String> fileTypeLookup, ListingCache cache,
+            Function<DocumentInfo, Uri> contentsUriBuilder) {
+        mContext = context;
+        mFeatures = features;
+        mState = state;
+        mFileTypeLookup = fileTypeLookup;
+        mCache = cache;
+        mContentsUriBuilder = contentsUriBuilder;
+    }
+
+    /**
+     * Notes that the directory on top of the stack was shown, and replaces the pending
+     * prefetches with the directories likely to be opened from it.
+     */
+    void onDirectoryShown(ContentLock lock) {
+        final DocumentStack stack = mState.stack;
+        if (Objects.equals(stack.peek(), mShownDoc)) {
+            // Reloaded, e.g. after a change.
+            return;
+        }
+        mShownDoc = stack.peek();
+        if (stack.size() >= 2) {
+            recordVisit(stack.get(stack.size() - 2), stack.peek());
+        }
+        if (!mFeatures.isDirectoryPrefetchEnabled()) {
+            return;
+        }
+
+        cancel();
+        final List<DocumentInfo> candidates = new ArrayList<>();
+        if (stack.peek() != null) {
+            candidates.addAll(getMostVisitedChildren(stack.peek()));
+        }
+        if (stack.size() >= MIN_PARENT_DEPTH) {
+            candidates.add(stack.get(stack.size() - 2));
+        }
+        for (DocumentInfo doc : candidates) {
+            prefetch(doc, lock);
+        }
+    }
+
+    /**
+     * Prefetches a directory the user is about to open, e.g. the focused one. Replaces the
+     * oldest pending prefetch if there are too many.
+     */
+    void prefetch(DocumentInfo doc, ContentLock lock) {
+        if (!mFeatures.isDirectoryPrefetchEnabled() || !doc.isDirectory()
+                || mState.stack.getRoot() == null) {
+            return;
+        }
+        final List<PrefetchTask> pending = new ArrayList<>();
+        for (PrefetchTask task : mTasks) {
+            if (task.isCancelled()) {
+                continue;
+            }
+            if (task.mDoc.equals(doc)) {
+                return;
+            }
+            pending.add(task);
+        }
+
+        final DirectoryLoader loader = new DirectoryLoader(mFeatures, mContext, mState,
+                mState.stack.getRoot(), doc, mContentsUriBuilder.apply(doc), mFileTypeLookup,
+                lock, mCache, /* queryArgs= */ null);
+        final ListingCache.Key key = loader.createCacheKey();
+        if (key == null || mCache.contains(key)) {
+            return;
+        }
+        if (pending.size() >= MAX_PREFETCHES) {
+            pending.get(0).preempt();
+        }
+
+        if (DEBUG) {
+            Log.d(TAG, "Prefetching " + DocumentInfo.debugString(doc));
+        }
+        final PrefetchTask task = new PrefetchTask(doc, loader, lock);
+        mTasks.add(task);
+        ProviderExecutor.forAuthority(doc.authority)
+                .execute(ProviderExecutor.PRIORITY_SPECULATIVE, task);
+    }
+
+    /** Cancels the pending prefetches. */
+    void cancel() {
+        for (PrefetchTask task : mTasks) {
+            task.preempt();
+        }
+    }
+
+    private void recordVisit(DocumentInfo parent, DocumentInfo child) {
+        Map<Uri, Visit> children = mVisits.get(parent.derivedUri);
+        if (children == null) {
+            children = new LinkedHashMap<>();
+            mVisits.put(parent.derivedUri, children);
+        }
+        final Visit visit = children.get(child.derivedUri);
+        if (visit != null) {
+            visit.count++;
+        } else {
+            children.put(child.derivedUri, new Visit(child));
+        }
+    }
+
+    private List<DocumentInfo> getMostVisitedChildren(DocumentInfo parent) {
+        final Map<Uri, Visit> children = mVisits.get(parent.derivedUri);
+        if (children == null) {
+            return Collections.emptyList();
+        }
+        final List<Visit> visits = new ArrayList<>(children.values());
+        visits.sort((lhs, rhs) -> Integer.compare(rhs.count, lhs.count));
+        final List<DocumentInfo> docs = new ArrayList<>();
+        for (int i = 0; i < visits.size() && i < MAX_CHILD_CANDIDATES; i++) {
+            docs.add(visits.get(i).doc);
+        }
+        return docs;
+    }
+
+    private static final class Visit {
+        final DocumentInfo doc;
+        int count = 1;
+
+        Visit(DocumentInfo doc) {
+            this.doc = doc;
+        }
+    }
+
+    private final class PrefetchTask extends AsyncTask<Void, Void, DirectoryResult>
+            implements Preemptable {
+        private final DocumentInfo mDoc;
+        private final DirectoryLoader mLoader;
+        private final ContentLock mLock;
+
+        PrefetchTask(DocumentInfo doc, DirectoryLoader loader, ContentLock lock) {
+            mDoc = doc;
+            mLoader = loader;
+            mLock = lock;
+        }
+
+        // Called on the thread that queued a foreground load, or the main thread.
+        @Override
+        public void preempt() {
+            if (DEBUG) {
+                Log.d(TAG, "Prefetch of " + DocumentInfo.debugString(mDoc) + " was cancelled.");
+            }
+            cancel(false);
+            mLoader.cancelLoadInBackground();
+        }
+
+        @Override
+        protected @Nullable DirectoryResult doInBackground(Void... params) {
+            if (isCancelled()) {
+                return null;
+            }
+            return mLoader.loadForCacheInBackground();
+        }
+
+        @Override
+        protected void onPostExecute(@Nullable DirectoryResult result) {
+            mTasks.remove(this);
+            if (result != null) {
+                mCache.putPrefetched(result.cacheKey, result, mLock);
+                FileUtils.closeQuietly(result);
+            }
+        }
+
+        @Override
+        protected void onCancelled(@Nullable DirectoryResult result) {
+            mTasks.remove(this);
+            FileUtils.closeQuietly(result);
+        }
+    }
+}
@@ -16,43 +16,93 @@
 
 package com.android.documentsui;
 
+import static com.android.documentsui.base.DocumentInfo.getCursorInt;
+import static com.android.documentsui.base.DocumentInfo.getCursorLong;
 import static com.android.documentsui.base.DocumentInfo.getCursorString;
 
 import android.content.ContentProviderClient;
+import android.content.ContentResolver;
+import android.database.ContentObserver;
 import android.database.Cursor;
+import android.database.DataSetObserver;
 import android.os.FileUtils;
 import android.provider.DocumentsContract;
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+
 import com.android.documentsui.archives.ArchivesProvider;
 import com.android.documentsui.base.DocumentInfo;
+import com.android.documentsui.sorting.SortModel;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DirectoryResult implements AutoCloseable {
 
     private static final String TAG = "DirectoryResult";
 
+    /**
+     * Above this many inserted and removed rows a diff against the previous result is not
+     * computed. Diffing costs O(n * d) for d edits, and when most of the listing changed,
+     * rebinding everything is as cheap as animating it.
+     */
+    private static final int MAX_DIFF_EDITS = 1000;
+
     public Exception exception;
     public DocumentInfo doc;
     ContentProviderClient client;
+    // The key to keep the result by in the ListingCache, or null if it shouldn't be kept.
+    @Nullable ListingCache.Key cacheKey;
 
     private Cursor mCursor;
     private Set<String> mFileNames;
     private String[] mModelIds;
+    // Maps model ids to cursor positions.
+    private Map<String, Integer> mPositions;
+    // Hash of the displayed columns of each row, to tell which rows changed between results.
+    private long[] mFingerprints;
+    // Number of directories at the start of the rows.
+    private int mDirectoryCount;
+
+    private @Nullable String[] mDiffBase;
+    private @Nullable DiffUtil.DiffResult mDiff;
+
+    // Bumped whenever the rows may have changed or become unreadable, see isStale().
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    // The generation the cursor-related fields were loaded at.
+    private volatile int mLoadedGeneration;
+    private final DataSetObserver mInvalidationObserver = new DataSetObserver() {
+        @Override
+        public void onInvalidated() {
+            invalidate();
+        }
+    };
+    private final ContentObserver mContentObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange) {
+            invalidate();
+        }
+    };
 
     @Override
     public void close() {
-        FileUtils.closeQuietly(mCursor);
+        invalidate();
+        final Cursor cursor = mCursor;
+        setCursor(null);
+        FileUtils.closeQuietly(cursor);
         if (client != null && doc.isInArchive()) {
             ArchivesProvider.releaseArchive(client, doc.derivedUri);
         }
         FileUtils.closeQuietly(client);
         client = null;
         doc = null;
-
-        setCursor(null);
     }
 
     public Cursor getCursor() {
@@ -63,50 +113,423 @@ public class DirectoryResult implements AutoCloseable {
         return mModelIds;
     }
 
+    /** Returns an unmodifiable set of the display names of the rows. */
     public Set<String> getFileNames() {
         return mFileNames;
     }
 
+    /** Returns an unmodifiable map from the model ids to their cursor positions. */
+    public Map<String, Integer> getPositions() {
+        return mPositions;
+    }
+
+    /**
+     * Returns the changes from the rows of the result passed to {@link #diffFrom}, or null if
+     * no diff was computed. The diff is over the model ids, with one extra item between the
+     * leading directories and the other documents when there are both, mirroring the section
+     * break shown in the directory list.
+     */
+    public @Nullable DiffUtil.DiffResult getDiff() {
+        return mDiff;
+    }
+
+    /** Returns the model ids {@link #getDiff()} applies to. */
+    @Nullable String[] getDiffBase() {
+        return mDiffBase;
+    }
+
+    /**
+     * Computes the changes from the rows of {@code previous} to the rows of this result, so
+     * the list can be updated without rebinding unchanged rows. Must not be called from UI
+     * thread.
+     */
+    public void diffFrom(@Nullable DirectoryResult previous) {
+        ThreadHelper.assertNotOnMainThread();
+        mDiff = null;
+        mDiffBase = null;
+        if (previous == null || mModelIds == null) {
+            return;
+        }
+
+        // The previous result may be closed on the UI thread while we read it.
+        final String[] oldIds = previous.mModelIds;
+        final long[] oldFingerprints = previous.mFingerprints;
+        final int oldDirectoryCount = previous.mDirectoryCount;
+        if (oldIds == null || oldFingerprints == null) {
+            return;
+        }
+
+        final Set<String> oldIdSet = new HashSet<>(oldIds.length);
+        Collections.addAll(oldIdSet, oldIds);
+        int inserted = 0;
+        for (String id : mModelIds) {
+            if (!oldIdSet.contains(id)) {
+                inserted++;
+            }
+        }
+        final int removed = oldIds.length - (mModelIds.length - inserted);
+        if (inserted + removed > MAX_DIFF_EDITS) {
+            return;
+        }
+
+        mDiff = DiffUtil.calculateDiff(new RowsCallback(
+                new Rows(oldIds, oldFingerprints, oldDirectoryCount),
+                new Rows(mModelIds, mFingerprints, mDirectoryCount)));
+        mDiffBase = oldIds;
+    }
+
+    /**
+     * Returns whether the rows of this result may have changed or can no longer be read since
+     * they were loaded. That is the case once the result or its cursor was closed or
+     * deactivated, its content changed, or reading it failed, e.g. because its provider died.
+     *
+     * <p>A provider that died doesn't notify anyone, so this reads the first and last rows,
+     * which fails when refilling the window of a cursor whose provider is gone. The cost is the
+     * same however many rows there are. Must be called on the thread that reads the cursor.
+     */
+    public boolean isStale() {
+        if (mCursor == null || mLoadedGeneration != mGeneration.get()) {
+            return true;
+        }
+        try {
+            if (mCursor.getCount() > 0 && !(mCursor.moveToFirst() && mCursor.moveToLast())) {
+                invalidate();
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Cannot read cursor. Provider died?", e);
+            invalidate();
+        }
+        return mLoadedGeneration != mGeneration.get();
+    }
+
+    private void invalidate() {
+        mGeneration.incrementAndGet();
+    }
+
+    /**
+     * Starts tracking the changes to {@code cursor}, and returns the generation its rows are
+     * loaded at.
+     */
+    private int watch(Cursor cursor) {
+        cursor.registerDataSetObserver(mInvalidationObserver);
+        cursor.registerContentObserver(mContentObserver);
+        return mGeneration.get();
+    }
+
+    /**
+     * Stops tracking the changes to the cursor. The content observer is passed down to the
+     * cursor the rows were read from, which is shared by other results, so it has to go.
+     */
+    private void unwatch() {
+        if (mCursor == null) {
+            return;
+        }
+        try {
+            mCursor.unregisterContentObserver(mContentObserver);
+            mCursor.unregisterDataSetObserver(mInvalidationObserver);
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "Observers already unregistered", e);
+        }
+    }
+
     /** Update the cursor and populate cursor-related fields. */
     public void setCursor(Cursor cursor) {
+        unwatch();
         mCursor = cursor;
 
         if (mCursor == null) {
             mFileNames = null;
             mModelIds = null;
+            mPositions = null;
+            mFingerprints = null;
+            mDirectoryCount = 0;
+            mDiffBase = null;
+            mDiff = null;
         } else {
+            mLoadedGeneration = watch(mCursor);
             loadDataFromCursor();
         }
     }
 
+    /**
+     * Update the cursor to a re-sorted view of the rows of {@code previous}, and populate the
+     * cursor-related fields from {@code previous} instead of reading the cursor again.
+     *
+     * @param previousPositions for each position of {@code cursor}, the position of the same
+     *         row in the cursor of {@code previous}
+     */
+    public void setResortedCursor(
+            Cursor cursor, DirectoryResult previous, int[] previousPositions) {
+        final String[] previousIds = previous.getModelIds();
+        if (previousIds == null || previous.getFileNames() == null) {
+            setCursor(cursor);
+            return;
+        }
+
+        unwatch();
+        mCursor = cursor;
+        mLoadedGeneration = watch(mCursor);
+        final String[] modelIds = new String[previousPositions.length];
+        for (int i = 0; i < modelIds.length; i++) {
+            modelIds[i] = previousIds[previousPositions[i]];
+        }
+        mModelIds = modelIds;
+        mPositions = buildPositions(modelIds);
+        mFileNames = previous.getFileNames();
+
+        final long[] previousFingerprints = previous.mFingerprints;
+        if (previousFingerprints != null) {
+            final long[] fingerprints = new long[previousPositions.length];
+            for (int i = 0; i < fingerprints.length; i++) {
+                fingerprints[i] = previousFingerprints[previousPositions[i]];
+            }
+            mFingerprints = fingerprints;
+        }
+        mDirectoryCount = previous.mDirectoryCount;
+    }
+
+    /**
+     * Update the cursor to one holding the rows of {@code previous} and rows appended since,
+     * and populate the cursor-related fields of the rows of {@code previous} from it, so only
+     * the appended rows are read. Must not be called from UI thread.
+     *
+     * @param previousPositions for each position of {@code cursor}, the position of the same
+     *         row in the cursor of {@code previous}, or -1 if the row was appended
+     */
+    public void setExtendedCursor(
+            Cursor cursor, DirectoryResult previous, int[] previousPositions) {
+        ThreadHelper.assertNotOnMainThread();
+        final String[] previousIds = previous.getModelIds();
+        final long[] previousFingerprints = previous.mFingerprints;
+        if (previousIds == null || previous.getFileNames() == null
+                || previousFingerprints == null) {
+            setCursor(cursor);
+            return;
+        }
+
+        unwatch();
+        mCursor = cursor;
+        mLoadedGeneration = watch(mCursor);
+        final int count = previousPositions.length;
+        final String[] modelIds = new String[count];
+        final long[] fingerprints = new long[count];
+        int directoryCount = 0;
+        final Set<String> fileNames = new HashSet<>(previous.getFileNames());
+        try {
+            final ModelId.Builder modelIdBuilder = new ModelId.Builder(mCursor);
+            for (int pos = 0; pos < count; ++pos) {
+                final int previousPos = previousPositions[pos];
+                final boolean isDir;
+                if (previousPos != -1) {
+                    modelIds[pos] = previousIds[previousPos];
+                    fingerprints[pos] = previousFingerprints[previousPos];
+                    isDir = previousPos < previous.mDirectoryCount;
+                } else {
+                    if (!mCursor.moveToPosition(pos)) {
+                        Log.e(TAG, "Fail to move cursor to pos: " + pos);
+                        invalidate();
+                        return;
+                    }
+                    modelIds[pos] = modelIdBuilder.build();
+                    final String displayName = getCursorString(
+                            mCursor, DocumentsContract.Document.COLUMN_DISPLAY_NAME);
+                    final String mimeType = getCursorString(
+                            mCursor, DocumentsContract.Document.COLUMN_MIME_TYPE);
+                    fileNames.add(displayName);
+                    fingerprints[pos] = fingerprint(mCursor, displayName, mimeType);
+                    isDir = DocumentsContract.Document.MIME_TYPE_DIR.equals(mimeType);
+                }
+                if (directoryCount == pos && isDir) {
+                    directoryCount++;
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Exception when moving cursor. Stale cursor?", e);
+            invalidate();
+            return;
+        }
+
+        mModelIds = modelIds;
+        mPositions = buildPositions(modelIds);
+        mFileNames = Collections.unmodifiableSet(fileNames);
+        mFingerprints = fingerprints;
+        mDirectoryCount = directoryCount;
+    }
+
+    /**
+     * Returns a new result over the rows of this one, in the same order, that reuses its
+     * cursor-related fields and can be closed independently of it.
+     *
+     * @return the new result, or null if the rows can't be shared, e.g. because they are stale,
+     *         were not sorted by DocumentsUI, or belong to an archive that is released with this
+     *         result
+     */
+    @Nullable DirectoryResult share() {
+        if (isStale() || mModelIds == null || client != null) {
+            return null;
+        }
+        return copyWithCursor(SortModel.shareSortedCursor(mCursor));
+    }
+
+    /**
+     * Same as {@link #share}, but the new result holds an in-memory copy of the rows rather
+     * than the provider's cursor, see {@link SortModel#detachSortedCursor}. Keeping it, e.g. in
+     * the {@link ListingCache}, doesn't keep the provider's cursor open.
+     *
+     * @return the new result, or null if the rows can't be shared, or are not copied in memory
+     */
+    @Nullable DirectoryResult detach(ContentResolver resolver) {
+        if (isStale() || mModelIds == null || client != null) {
+            return null;
+        }
+        return copyWithCursor(SortModel.detachSortedCursor(mCursor, resolver));
+    }
+
+    private @Nullable DirectoryResult copyWithCursor(@Nullable Cursor cursor) {
+        if (cursor == null) {
+            return null;
+        }
+
+        final DirectoryResult result = new DirectoryResult();
+        result.doc = doc;
+        result.mCursor = cursor;
+        result.mLoadedGeneration = result.watch(cursor);
+        result.mModelIds = mModelIds;
+        result.mPositions = mPositions;
+        result.mFileNames = mFileNames;
+        result.mFingerprints = mFingerprints;
+        result.mDirectoryCount = mDirectoryCount;
+        return result;
+    }
+
     /** Populate cursor-related field. Must not be called from UI thread. */
     private void loadDataFromCursor() {
         ThreadHelper.assertNotOnMainThread();
         int cursorCount = mCursor.getCount();
         String[] modelIds = new String[cursorCount];
+        long[] fingerprints = new long[cursorCount];
+        int directoryCount = 0;
         Set<String> fileNames = new HashSet<>();
         try {
+            final ModelId.Builder modelIdBuilder = new ModelId.Builder(mCursor);
             mCursor.moveToPosition(-1);
             for (int pos = 0; pos < cursorCount; ++pos) {
                 if (!mCursor.moveToNext()) {
                     Log.e(TAG, "Fail to move cursor to next pos: " + pos);
+                    invalidate();
                     return;
                 }
 
                 // Generates a Model ID for a cursor entry that refers to a document. The Model
                 // ID is a unique string that can be used to identify the document referred to by
                 // the cursor. Prefix the ids with the authority to avoid collisions.
-                modelIds[pos] = ModelId.build(mCursor);
-                fileNames.add(
-                        getCursorString(mCursor, DocumentsContract.Document.COLUMN_DISPLAY_NAME));
+                modelIds[pos] = modelIdBuilder.build();
+                final String displayName =
+                        getCursorString(mCursor, DocumentsContract.Document.COLUMN_DISPLAY_NAME);
+                final String mimeType =
+                        getCursorString(mCursor, DocumentsContract.Document.COLUMN_MIME_TYPE);
+                fileNames.add(displayName);
+                fingerprints[pos] = fingerprint(mCursor, displayName, mimeType);
+                if (directoryCount == pos
+                        && DocumentsContract.Document.MIME_TYPE_DIR.equals(mimeType)) {
+                    directoryCount++;
+                }
             }
         } catch (Exception e) {
             Log.e(TAG, "Exception when moving cursor. Stale cursor?", e);
+            invalidate();
             return;
         }
 
         // Model related data is only non-null when no error iterating through cursor.
         mModelIds = modelIds;
-        mFileNames = fileNames;
+        mPositions = buildPositions(modelIds);
+        mFileNames = Collections.unmodifiableSet(fileNames);
+        mFingerprints = fingerprints;
+        mDirectoryCount = directoryCount;
+    }
+
+    private static Map<String, Integer> buildPositions(String[] modelIds) {
+        final Map<String, Integer> positions = new HashMap<>(modelIds.length * 4 / 3 + 1);
+        for (int i = 0; i < modelIds.length; i++) {
+            positions.put(modelIds[i], i);
+        }
+        return Collections.unmodifiableMap(positions);
+    }
+
+    private static long fingerprint(Cursor cursor, String displayName, String mimeType) {
+        long hash = getCursorLong(cursor, DocumentsContract.Document.COLUMN_LAST_MODIFIED);
+        hash = 31 * hash + getCursorLong(cursor, DocumentsContract.Document.COLUMN_SIZE);
+        hash = 31 * hash + getCursorInt(cursor, DocumentsContract.Document.COLUMN_FLAGS);
+        hash = 31 * hash + Objects.hashCode(displayName);
+        hash = 31 * hash + Objects.hashCode(mimeType);
+        hash = 31 * hash + Objects.hashCode(
+                getCursorString(cursor, DocumentsContract.Document.COLUMN_SUMMARY));
+        return hash;
+    }
+
+    /** The rows of a result as laid out in the list, with a break after the directories. */
+    private static final class Rows {
+        final String[] ids;
+        final long[] fingerprints;
+        final int directoryCount;
+        final boolean hasBreak;
+
+        Rows(String[] ids, long[] fingerprints, int directoryCount) {
+            this.ids = ids;
+            this.fingerprints = fingerprints;
+            this.directoryCount = directoryCount;
+            hasBreak = directoryCount > 0 && directoryCount < ids.length;
+        }
+
+        int size() {
+            return hasBreak ? ids.length + 1 : ids.length;
+        }
+
+        boolean isBreak(int position) {
+            return hasBreak && position == directoryCount;
+        }
+
+        int toRow(int position) {
+            return hasBreak && position > directoryCount ? position - 1 : position;
+        }
+    }
+
+    private static final class RowsCallback extends DiffUtil.Callback {
+        private final Rows mOld;
+        private final Rows mNew;
+
+        RowsCallback(Rows oldRows, Rows newRows) {
+            mOld = oldRows;
+            mNew = newRows;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOld.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNew.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldPosition, int newPosition) {
+            if (mOld.isBreak(oldPosition) || mNew.isBreak(newPosition)) {
+                return mOld.isBreak(oldPosition) && mNew.isBreak(newPosition);
+            }
+            return Objects.equals(
+                    mOld.ids[mOld.toRow(oldPosition)], mNew.ids[mNew.toRow(newPosition)]);
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPosition, int newPosition) {
+            if (mOld.isBreak(oldPosition)) {
+                return true;
+            }
+            return mOld.fingerprints[mOld.toRow(oldPosition)]
+                    == mNew.fingerprints[mNew.toRow(newPosition)];
+        }
     }
 }
@@ -26,6 +26,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.om.OverlayManager;
+import android.content.res.Configuration;
 import android.net.Uri;
 import android.os.RemoteException;
 import android.os.UserHandle;
@@ -75,12 +76,13 @@ public class DocumentsApplication extends Application {
 
     private ProvidersCache mProviders;
     private ThumbnailCache mThumbnailCache;
+    private ListingCache mListingCache;
     private ClipStorage mClipStore;
     private DocumentClipper mClipper;
     private DragAndDropManager mDragAndDropManager;
     private UserIdManager mUserIdManager;
     private UserManagerState mUserManagerState;
-    private Lookup<String, String> mFileTypeLookup;
+    private FileTypeMap mFileTypeLookup;
 
     public static ProvidersCache getProvidersCache(Context context) {
         return ((DocumentsApplication) context.getApplicationContext()).mProviders;
@@ -91,6 +93,11 @@ public class DocumentsApplication extends Application {
         return app.mThumbnailCache;
     }
 
+    public static ListingCache getListingCache(Context context) {
+        final DocumentsApplication app = (DocumentsApplication) context.getApplicationContext();
+        return app.mListingCache;
+    }
+
     public static ContentProviderClient acquireUnstableProviderOrThrow(
             ContentResolver resolver, String authority) throws RemoteException {
         final ContentProviderClient client = resolver.acquireUnstableContentProviderClient(
@@ -208,6 +215,7 @@ public class DocumentsApplication extends Application {
         mProviders.updateAsync(/* forceRefreshAll= */ false, /* callback= */  null);
 
         mThumbnailCache = new ThumbnailCache(memoryClassBytes / 4);
+        mListingCache = new ListingCache(this);
 
         mClipStore = new ClipStorage(
                 ClipStorage.prepareStorage(getCacheDir()),
@@ -246,11 +254,20 @@ public class DocumentsApplication extends Application {
         SearchHistoryManager.getInstance(getApplicationContext());
     }
 
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+
+        // File type labels are localized.
+        mFileTypeLookup.invalidate();
+    }
+
     @Override
     public void onTrimMemory(int level) {
         super.onTrimMemory(level);
 
         mThumbnailCache.onTrimMemory(level);
+        mListingCache.onTrimMemory(level);
     }
 
     private BroadcastReceiver mCacheReceiver = new BroadcastReceiver() {
@@ -274,6 +291,9 @@ public class DocumentsApplication extends Application {
                 mProviders.updateAsync(/* forceRefreshAll= */ true,
                         () -> LocalBroadcastManager.getInstance(context).sendBroadcast(intent));
             } else {
+                if (Intent.ACTION_LOCALE_CHANGED.equals(action)) {
+                    mFileTypeLookup.invalidate();
+                }
                 mProviders.updateAsync(/* forceRefreshAll= */ true, /* callback= */ null);
             }
         }
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import android.os.SystemClock;
+
+import androidx.annotation.GuardedBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Counts, per executor and kind of task, how long tasks waited to start and how long they ran,
+ * and how many were rejected or preempted, to tell where the time of a load goes: waiting for
+ * an executor, waiting for a permit, or in the provider. Executors are named after their
+ * authority where they have one. Thread safe.
+ */
+public final class ExecutorStats {
+
+    @GuardedBy("sStats")
+    private static final Map<String, Stats> sStats = new TreeMap<>();
+
+    private ExecutorStats() {}
+
+    /**
+     * Returns a task that runs {@code command}, and records how long it waited from now and
+     * how long it ran.
+     */
+    public static Runnable wrap(String executor, String type, Runnable command) {
+        final long queuedTime = SystemClock.uptimeMillis();
+        return () -> {
+            final long startTime = SystemClock.uptimeMillis();
+            try {
+                command.run();
+            } finally {
+                record(executor, type, startTime - queuedTime,
+                        SystemClock.uptimeMillis() - startTime);
+            }
+        };
+    }
+
+    /** Runs {@code command} on {@code executor}, recording its timings. */
+    public static void execute(Executor executor, String name, String type, Runnable command) {
+        try {
+            executor.execute(wrap(name, type, command));
+        } catch (RejectedExecutionException e) {
+            recordRejected(name, type);
+            throw e;
+        }
+    }
+
+    /** Submits {@code command} to {@code executor}, recording its timings. */
+    public static Future<?> submit(
+            ExecutorService executor, String name, String type, Runnable command) {
+        try {
+            return executor.submit(wrap(name, type, command));
+        } catch (RejectedExecutionException e) {
+            recordRejected(name, type);
+            throw e;
+        }
+    }
+
+    /** Records a task that waited {@code waitMillis} to start, and then ran {@code runMillis}. */
+    public static void record(String executor, String type, long waitMillis, long runMillis) {
+        synchronized (sStats) {
+            final Stats stats = getLocked(executor, type);
+            stats.count++;
+            stats.totalWait += waitMillis;
+            stats.maxWait = Math.max(stats.maxWait, waitMillis);
+            stats.totalRun += runMillis;
+            stats.maxRun = Math.max(stats.maxRun, runMillis);
+        }
+    }
+
+    public static void recordRejected(String executor, String type) {
+        synchronized (sStats) {
+            getLocked(executor, type).rejected++;
+        }
+    }
+
+    public static void recordPreempted(String executor, String type) {
+        synchronized (sStats) {
+            getLocked(executor, type).preempted++;
+        }
+    }
+
+    /** Returns a line of stats per executor and kind of task. */
+    public static List<String> dump() {
+        final List<String> lines = new ArrayList<>();
+        synchronized (sStats) {
+            for (Map.Entry<String, Stats> entry : sStats.entrySet()) {
+                final Stats stats = entry.getValue();
+                lines.add(String.format(Locale.US,
+                        "%s: %d run, wait avg %dms max %dms, run avg %dms max %dms,"
+                                + " %d rejected, %d preempted",
+                        entry.getKey(), stats.count,
+                        average(stats.totalWait, stats.count), stats.maxWait,
+                        average(stats.totalRun, stats.count), stats.maxRun,
+                        stats.rejected, stats.preempted));
+            }
+        }
+        return lines;
+    }
+
+    public static void reset() {
+        synchronized (sStats) {
+            sStats.clear();
+        }
+    }
+
+    @GuardedBy("sStats")
+    private static Stats getLocked(String executor, String type) {
+        final String key = executor + " [" + type + "]";
+        Stats stats = sStats.get(key);
+        if (stats == null) {
+            stats = new Stats();
+            sStats.put(key, stats);
+        }
+        return stats;
+    }
+
+    private static long average(long total, int count) {
+        return count == 0 ? 0 : total / count;
+    }
+
+    private static final class Stats {
+        int count;
+        long totalWait;
+        long maxWait;
+        long totalRun;
+        long maxRun;
+        int rejected;
+        int preempted;
+    }
+}
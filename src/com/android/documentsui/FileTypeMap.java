@@ -18,22 +18,70 @@ package com.android.documentsui;
 
 import android.content.ContentResolver;
 import android.content.Context;
+import android.util.LruCache;
+
+import androidx.annotation.VisibleForTesting;
 
 import com.android.documentsui.base.Lookup;
 
 /**
  * A map from mime type to user friendly type string.
+ *
+ * <p>Labels are memoized: sorting by file type looks up every row and list items look up the
+ * type on every bind, while a directory rarely holds more than a handful of distinct types.
+ * Labels are localized, so the cache must be {@link #invalidate invalidated} when the locale or
+ * configuration changes.
  */
 public class FileTypeMap implements Lookup<String, String> {
-    private final ContentResolver mResolver;
+    private static final int MAX_CACHED_TYPES = 256;
+
+    private final LruCache<String, String> mLabels;
 
     FileTypeMap(Context context) {
-        mResolver = context.getContentResolver();
+        this(resolverLookup(context.getContentResolver()));
+    }
+
+    @VisibleForTesting
+    FileTypeMap(Lookup<String, String> labelLookup) {
+        mLabels = new LruCache<String, String>(MAX_CACHED_TYPES) {
+            @Override
+            protected String create(String mimeType) {
+                return labelLookup.lookup(mimeType);
+            }
+        };
+    }
+
+    private static Lookup<String, String> resolverLookup(ContentResolver resolver) {
+        return mimeType -> String.valueOf(resolver.getTypeInfo(mimeType).getLabel());
     }
 
     @Override
     public String lookup(String mimeType) {
         if (mimeType == null) return null;
-        return String.valueOf(mResolver.getTypeInfo(mimeType).getLabel());
+        return mLabels.get(mimeType);
+    }
+
+    /**
+     * Drops all cached labels, e.g. after a locale change.
+     */
+    public void invalidate() {
+        mLabels.evictAll();
+    }
+
+    public int getHitCount() {
+        return mLabels.hitCount();
+    }
+
+    public int getMissCount() {
+        return mLabels.missCount();
+    }
+
+    @Override
+    public String toString() {
+        return "FileTypeMap{"
+                + "size=" + mLabels.size()
+                + ", hits=" + mLabels.hitCount()
+                + ", misses=" + mLabels.missCount()
+                + "}";
     }
 }
@@ -57,6 +57,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.function.Consumer;
 
 /**
  * The implementation to handle focus and keyboard driven navigation.
@@ -73,6 +74,7 @@ public final class FocusManager extends FocusDelegate<String> implements FocusHa
     private final TitleSearchHelper mSearchHelper;
 
     private boolean mNavDrawerHasFocus;
+    private @Nullable Consumer<String> mFocusListener;
 
     public FocusManager(
             Features features,
@@ -137,9 +139,21 @@ public final class FocusManager extends FocusDelegate<String> implements FocusHa
         // Remember focus events on items.
         if (hasFocus && mScope.isValid() && v.getParent() == mScope.view) {
             mScope.lastFocusPosition = mScope.view.getChildAdapterPosition(v);
+            final RecyclerView.ViewHolder holder = mScope.view.getChildViewHolder(v);
+            if (mFocusListener != null && holder instanceof DocumentHolder) {
+                mFocusListener.accept(((DocumentHolder) holder).getModelId());
+            }
         }
     }
 
+    /**
+     * Sets a listener told the model id of each document that gains focus in the directory
+     * list.
+     */
+    public void setFocusListener(@Nullable Consumer<String> listener) {
+        mFocusListener = listener;
+    }
+
     @Override
     public boolean focusDirectoryList() {
         if (!mScope.isValid() || mScope.adapter.getItemCount() == 0) {
@@ -78,6 +78,7 @@ public class Injector<T extends ActionHandler> {
     public DocsSelectionHelper selectionMgr;
 
     private final Model mModel;
+    private final ListingCache mListingCache;
 
     // must be initialized before calling super.onCreate because prefs
     // are used in State initialization.
@@ -87,8 +88,9 @@ public class Injector<T extends ActionHandler> {
             MessageBuilder messages,
             DialogController dialogs,
             Lookup<String, String> fileTypeLookup,
+            ListingCache listingCache,
             Consumer<Collection<RootInfo>> shortcutsUpdater) {
-        this(features, config, messages, dialogs, fileTypeLookup,
+        this(features, config, messages, dialogs, fileTypeLookup, listingCache,
                 shortcutsUpdater, new Model(features));
     }
 
@@ -99,6 +101,7 @@ public class Injector<T extends ActionHandler> {
             MessageBuilder messages,
             DialogController dialogs,
             Lookup<String, String> fileTypeLookup,
+            ListingCache listingCache,
             Consumer<Collection<RootInfo>> shortcutsUpdater,
             Model model) {
 
@@ -107,6 +110,7 @@ public class Injector<T extends ActionHandler> {
         this.messages = messages;
         this.dialogs = dialogs;
         this.fileTypeLookup = fileTypeLookup;
+        this.mListingCache = listingCache;
         this.shortcutsUpdater = shortcutsUpdater;
         this.mModel = model;
         this.debugHelper = new DebugHelper(this);
@@ -116,6 +120,10 @@ public class Injector<T extends ActionHandler> {
         return mModel;
     }
 
+    public ListingCache getListingCache() {
+        return mListingCache;
+    }
+
     public FocusManager getFocusManager(RecyclerView view, Model model) {
         assert (focusManager != null);
         return focusManager.reset(view, model);
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import static com.android.documentsui.base.SharedMinimal.DEBUG;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.net.Uri;
+import android.os.FileUtils;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.documentsui.base.UserId;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Keeps the sorted results of recently loaded directories, so that going back to one of them
+ * shows it at once while it is loaded again. The least recently used listings are dropped once
+ * more than {@link #MAX_ENTRIES} listings or {@link #MAX_ROWS} rows are kept, and a listing is
+ * dropped as soon as the provider reports a change to it. The rows are kept as in-memory copies,
+ * which don't keep the provider's cursors open, and the cache is kept by the application, so
+ * that it outlives activities and their configuration changes. Must be used on the main thread.
+ */
+public final class ListingCache {
+
+    private static final String TAG = "ListingCache";
+
+    @VisibleForTesting
+    static final int MAX_ENTRIES = 8;
+    @VisibleForTesting
+    static final int MAX_ROWS = 20_000;
+
+    private final Context mContext;
+    // In access order, so the eldest entry is the least recently used.
+    private final LinkedHashMap<Key, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private int mRowCount;
+
+    // How often a listing was found, and how often a prefetched one was shown before it was
+    // dropped, to tell whether prefetching pays off.
+    private int mHitCount;
+    private int mMissCount;
+    private int mPrefetchCount;
+    private int mPrefetchHitCount;
+
+    public ListingCache(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * Returns a result over the cached rows of a listing, which the caller owns and has to
+     * close, or null if the listing isn't cached.
+     */
+    public @Nullable DirectoryResult get(Key key) {
+        final Entry entry = mEntries.get(key);
+        final DirectoryResult result =
+                entry == null || entry.result.isStale() ? null : entry.result.share();
+        if (result == null) {
+            mMissCount++;
+            remove(key);
+            return null;
+        }
+
+        mHitCount++;
+        if (entry.prefetched && !entry.shown) {
+            mPrefetchHitCount++;
+        }
+        entry.shown = true;
+        if (DEBUG) {
+            Log.d(TAG, "Hit for " + key + (entry.prefetched ? " (prefetched)" : ""));
+        }
+        return result;
+    }
+
+    /** Returns whether the listing is cached, without counting it as used. */
+    public boolean contains(Key key) {
+        return mEntries.containsKey(key);
+    }
+
+    /**
+     * Keeps a copy of the rows of {@code result} for the listing given by {@code key}, replacing
+     * the rows kept for it before. Does nothing if the rows of {@code result} can't be copied,
+     * e.g. because they are not sorted by DocumentsUI, or not read into memory. {@code result}
+     * is still owned by the caller.
+     *
+     * @param lock the lock held while the listing must not change, see
+     *         {@link LockingContentObserver}
+     */
+    public void put(Key key, DirectoryResult result, ContentLock lock) {
+        put(key, result, lock, false);
+    }
+
+    /**
+     * Same as {@link #put}, for a listing loaded before the user asked for it. Such listings
+     * are counted, see {@link #getPrefetchHitCount}.
+     */
+    public void putPrefetched(Key key, DirectoryResult result, ContentLock lock) {
+        put(key, result, lock, true);
+    }
+
+    private void put(Key key, DirectoryResult result, ContentLock lock, boolean prefetched) {
+        remove(key);
+        if (result.getCursor() == null || result.getCursor().getCount() > MAX_ROWS) {
+            return;
+        }
+        final DirectoryResult shared =
+                result.detach(key.mUserId.getContentResolver(mContext));
+        if (shared == null) {
+            return;
+        }
+
+        final Entry entry = new Entry(shared, prefetched);
+        if (prefetched) {
+            mPrefetchCount++;
+        }
+        entry.observer = new LockingContentObserver(lock, () -> invalidate(key, entry));
+        shared.getCursor().registerContentObserver(entry.observer);
+        mEntries.put(key, entry);
+        mRowCount += entry.rowCount;
+        trim();
+    }
+
+    public void remove(Key key) {
+        final Entry entry = mEntries.remove(key);
+        if (entry != null) {
+            close(entry);
+        }
+    }
+
+    private void invalidate(Key key, Entry entry) {
+        // The callback may run after the entry was replaced, if the lock was held.
+        if (mEntries.get(key) != entry) {
+            return;
+        }
+        if (DEBUG) {
+            Log.d(TAG, "Invalidated " + key);
+        }
+        remove(key);
+    }
+
+    public void clear() {
+        for (Entry entry : mEntries.values()) {
+            close(entry);
+        }
+        mEntries.clear();
+    }
+
+    /** Drops all listings when the app is in the background and memory runs low. */
+    public void onTrimMemory(int level) {
+        if (level < ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            return;
+        }
+        if (DEBUG) {
+            Log.d(TAG, "Hits: " + mHitCount + ", misses: " + mMissCount
+                    + ", prefetched: " + mPrefetchCount
+                    + ", prefetched and shown: " + mPrefetchHitCount);
+        }
+        clear();
+    }
+
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    public int getMissCount() {
+        return mMissCount;
+    }
+
+    public int getPrefetchCount() {
+        return mPrefetchCount;
+    }
+
+    /** Returns how many prefetched listings were shown before they were dropped. */
+    public int getPrefetchHitCount() {
+        return mPrefetchHitCount;
+    }
+
+    @VisibleForTesting
+    int size() {
+        return mEntries.size();
+    }
+
+    private void trim() {
+        final Iterator<Map.Entry<Key, Entry>> it = mEntries.entrySet().iterator();
+        while (it.hasNext() && (mEntries.size() > MAX_ENTRIES || mRowCount > MAX_ROWS)) {
+            final Entry entry = it.next().getValue();
+            it.remove();
+            close(entry);
+        }
+    }
+
+    private void close(Entry entry) {
+        mRowCount -= entry.rowCount;
+        if (!entry.result.getCursor().isClosed()) {
+            entry.result.getCursor().unregisterContentObserver(entry.observer);
+        }
+        FileUtils.closeQuietly(entry.result);
+    }
+
+    private static final class Entry {
+        final DirectoryResult result;
+        final int rowCount;
+        final boolean prefetched;
+        LockingContentObserver observer;
+        boolean shown;
+
+        Entry(DirectoryResult result, boolean prefetched) {
+            this.result = result;
+            this.prefetched = prefetched;
+            rowCount = result.getCursor().getCount();
+        }
+    }
+
+    /**
+     * Identifies a listing: the user, the URI of the directory, which names its authority and
+     * document ID, and everything that decides which rows are shown and in which order.
+     */
+    public static final class Key {
+        private final UserId mUserId;
+        private final Uri mUri;
+        private final int mSortDimensionId;
+        private final int mSortDirection;
+        private final boolean mShowHiddenFiles;
+        private final @Nullable String[] mAcceptMimes;
+
+        public Key(UserId userId, Uri uri, int sortDimensionId, int sortDirection,
+                boolean showHiddenFiles, @Nullable String[] acceptMimes) {
+            mUserId = userId;
+            mUri = uri;
+            mSortDimensionId = sortDimensionId;
+            mSortDirection = sortDirection;
+            mShowHiddenFiles = showHiddenFiles;
+            mAcceptMimes = acceptMimes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return mSortDimensionId == other.mSortDimensionId
+                    && mSortDirection == other.mSortDirection
+                    && mShowHiddenFiles == other.mShowHiddenFiles
+                    && Objects.equals(mUserId, other.mUserId)
+                    && Objects.equals(mUri, other.mUri)
+                    && Arrays.equals(mAcceptMimes, other.mAcceptMimes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mUserId, mUri, mSortDimensionId, mSortDirection,
+                    mShowHiddenFiles, Arrays.hashCode(mAcceptMimes));
+        }
+
+        @Override
+        public String toString() {
+            return "Key{user=" + mUserId + ", uri=" + mUri
+                    + ", sort=" + mSortDimensionId + "/" + mSortDirection
+                    + ", showHiddenFiles=" + mShowHiddenFiles
+                    + ", acceptMimes=" + Arrays.toString(mAcceptMimes) + "}";
+        }
+    }
+}
@@ -20,6 +20,7 @@ import static com.android.documentsui.base.SharedMinimal.DEBUG;
 import static com.android.documentsui.base.SharedMinimal.VERBOSE;
 
 import android.app.AuthenticationRequiredException;
+import android.content.ContentResolver;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
@@ -30,6 +31,7 @@ import androidx.annotation.IntDef;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import androidx.recyclerview.selection.Selection;
+import androidx.recyclerview.widget.DiffUtil;
 
 import com.android.documentsui.base.DocumentFilters;
 import com.android.documentsui.base.DocumentInfo;
@@ -40,8 +42,7 @@ import com.android.documentsui.base.UserId;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -55,21 +56,33 @@ public class Model {
 
     private static final String TAG = "Model";
 
+    /**
+     * Boolean extra set by loaders on a paged listing that has more rows to load. Loaded rows
+     * are always the first rows of the listing.
+     */
+    public static final String EXTRA_HAS_MORE_PAGES = "com.android.documentsui.HAS_MORE_PAGES";
+
     public @Nullable String info;
     public @Nullable String error;
     public @Nullable DocumentInfo doc;
 
     private final Features mFeatures;
 
-    /** Maps Model ID to cursor positions, for looking up items by Model ID. */
-    private final Map<String, Integer> mPositions = new HashMap<>();
-    private final Set<String> mFileNames = new HashSet<>();
+    /**
+     * Maps Model ID to cursor positions, for looking up items by Model ID. Built by
+     * {@link DirectoryResult} off the UI thread, and never modified.
+     */
+    private Map<String, Integer> mPositions = Collections.emptyMap();
+    private Set<String> mFileNames = Collections.emptySet();
 
     private boolean mIsLoading;
+    private int mTotalCount = -1;
+    private boolean mHasMorePages;
     private List<EventListener<Update>> mUpdateListeners = new ArrayList<>();
     private @Nullable Cursor mCursor;
     private int mCursorCount;
     private String mIds[] = new String[0];
+    private @Nullable DiffUtil.DiffResult mUpdateDiff;
 
     public Model(Features features) {
         mFeatures = features;
@@ -100,15 +113,22 @@ public class Model {
         mCursor = null;
         mCursorCount = 0;
         mIds = new String[0];
-        mPositions.clear();
+        mUpdateDiff = null;
+        mPositions = Collections.emptyMap();
         info = null;
         error = null;
         doc = null;
         mIsLoading = false;
-        mFileNames.clear();
+        mTotalCount = -1;
+        mHasMorePages = false;
+        mFileNames = Collections.emptySet();
         notifyUpdateListeners();
     }
 
+    /**
+     * Updates the model with the given result. All lookup structures are built by
+     * {@link DirectoryResult} off the UI thread, so this only swaps references.
+     */
     @VisibleForTesting
     public void update(DirectoryResult result) {
         assert(result != null);
@@ -127,23 +147,26 @@ public class Model {
         mCursorCount = mCursor.getCount();
         doc = result.doc;
 
+        mUpdateDiff = null;
         if (result.getModelIds() != null && result.getFileNames() != null) {
-            mIds = result.getModelIds();
-            mFileNames.clear();
-            mFileNames.addAll(result.getFileNames());
-
-            // Populate the positions.
-            mPositions.clear();
-            for (int i = 0; i < mCursorCount; ++i) {
-                mPositions.put(mIds[i], i);
+            // The diff is only good if it was computed against the ids we are replacing.
+            if (result.getDiffBase() == mIds) {
+                mUpdateDiff = result.getDiff();
             }
+            mIds = result.getModelIds();
+            mPositions = result.getPositions();
+            mFileNames = result.getFileNames();
         }
 
+        mTotalCount = -1;
+        mHasMorePages = false;
         final Bundle extras = mCursor.getExtras();
         if (extras != null) {
             info = extras.getString(DocumentsContract.EXTRA_INFO);
             error = extras.getString(DocumentsContract.EXTRA_ERROR);
             mIsLoading = extras.getBoolean(DocumentsContract.EXTRA_LOADING, false);
+            mTotalCount = extras.getInt(ContentResolver.EXTRA_TOTAL_COUNT, -1);
+            mHasMorePages = extras.getBoolean(EXTRA_HAS_MORE_PAGES, false);
         }
 
         notifyUpdateListeners();
@@ -154,6 +177,22 @@ public class Model {
         return mCursorCount;
     }
 
+    /**
+     * Returns the changes made to the model ids by the last update, as computed by
+     * {@link DirectoryResult#getDiff()}, or null if they are not known.
+     */
+    public @Nullable DiffUtil.DiffResult getUpdateDiff() {
+        return mUpdateDiff;
+    }
+
+    /**
+     * Returns an unmodifiable map from the Model IDs to their positions in
+     * {@link #getModelIds()}. It is replaced, not changed, on update.
+     */
+    public Map<String, Integer> getPositions() {
+        return mPositions;
+    }
+
     public boolean hasFileWithName(String name) {
         return mFileNames.contains(name);
     }
@@ -182,6 +221,19 @@ public class Model {
         return mIsLoading;
     }
 
+    /**
+     * Returns the number of rows the provider reports for the whole listing, which may be more
+     * than {@link #getItemCount()} while it is loaded page by page, or -1 if unknown.
+     */
+    public int getTotalCount() {
+        return mTotalCount;
+    }
+
+    /** Returns whether the listing is paged and more pages can be loaded. */
+    public boolean hasMorePages() {
+        return mHasMorePages;
+    }
+
     public List<DocumentInfo> getDocuments(Selection<String> selection) {
         return loadDocuments(selection, DocumentFilters.ANY);
     }
@@ -1,8 +1,5 @@
 package com.android.documentsui;
 
-import static com.android.documentsui.base.DocumentInfo.getCursorInt;
-import static com.android.documentsui.base.DocumentInfo.getCursorString;
-
 import android.database.Cursor;
 import android.provider.DocumentsContract;
 
@@ -15,9 +12,7 @@ public class ModelId {
         if (cursor == null) {
             return null;
         }
-        return ModelId.build(UserId.of(getCursorInt(cursor, RootCursorWrapper.COLUMN_USER_ID)),
-                getCursorString(cursor, RootCursorWrapper.COLUMN_AUTHORITY),
-                getCursorString(cursor, DocumentsContract.Document.COLUMN_DOCUMENT_ID));
+        return new Builder(cursor).build();
     }
 
     public static final String build(UserId userId, String authority, String docId) {
@@ -27,4 +22,48 @@ public class ModelId {
         }
         return userId + "|" + authority + "|" + docId;
     }
+
+    /**
+     * Builds the model ids of the rows of one cursor. The columns are looked up once, and the
+     * "user|authority|" prefix is reused while it stays the same, which it does for all rows of
+     * most listings. So each id costs a single string allocation instead of several.
+     */
+    public static final class Builder {
+        private final Cursor mCursor;
+        private final int mUserIdIndex;
+        private final int mAuthorityIndex;
+        private final int mDocumentIdIndex;
+
+        private int mPrefixUserId;
+        private String mPrefixAuthority;
+        private String mPrefix;
+
+        public Builder(Cursor cursor) {
+            mCursor = cursor;
+            mUserIdIndex = cursor.getColumnIndex(RootCursorWrapper.COLUMN_USER_ID);
+            mAuthorityIndex = cursor.getColumnIndex(RootCursorWrapper.COLUMN_AUTHORITY);
+            mDocumentIdIndex =
+                    cursor.getColumnIndex(DocumentsContract.Document.COLUMN_DOCUMENT_ID);
+        }
+
+        /** Returns the model id of the current row, as {@link ModelId#build(Cursor)} would. */
+        public String build() {
+            final int userId = mUserIdIndex != -1 ? mCursor.getInt(mUserIdIndex) : 0;
+            final String authority =
+                    mAuthorityIndex != -1 ? mCursor.getString(mAuthorityIndex) : null;
+            final String docId =
+                    mDocumentIdIndex != -1 ? mCursor.getString(mDocumentIdIndex) : null;
+            if (authority == null || authority.isEmpty() || docId == null || docId.isEmpty()) {
+                return null;
+            }
+
+            if (mPrefix == null || userId != mPrefixUserId
+                    || !authority.equals(mPrefixAuthority)) {
+                mPrefixUserId = userId;
+                mPrefixAuthority = authority;
+                mPrefix = UserId.of(userId) + "|" + authority + "|";
+            }
+            return mPrefix.concat(docId);
+        }
+    }
 }
@@ -23,11 +23,10 @@ import android.content.ContentProviderClient;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.CursorWrapper;
-import android.database.MatrixCursor;
-import android.database.MergeCursor;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.FileUtils;
+import android.os.SystemClock;
 import android.provider.DocumentsContract;
 import android.provider.DocumentsContract.Document;
 import android.util.Log;
@@ -40,9 +39,11 @@ import com.android.documentsui.base.DocumentInfo;
 import com.android.documentsui.base.FilteringCursorWrapper;
 import com.android.documentsui.base.Lookup;
 import com.android.documentsui.base.RootInfo;
+import com.android.documentsui.base.SnapshotCursor;
 import com.android.documentsui.base.State;
 import com.android.documentsui.roots.ProvidersAccess;
 import com.android.documentsui.roots.RootCursorWrapper;
+import com.android.documentsui.sorting.SortModel;
 
 import com.google.common.util.concurrent.AbstractFuture;
 
@@ -50,6 +51,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -71,13 +73,26 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
     // previously returned cursors for filtering/sorting; this currently races
     // with the UI thread.
 
-    private static final int MAX_OUTSTANDING_TASK = 4;
+    private static final int MIN_OUTSTANDING_TASK = 2;
+    private static final int MAX_OUTSTANDING_TASK = 6;
     private static final int MAX_OUTSTANDING_TASK_SVELTE = 2;
+    // Memory class, in megabytes, per outstanding task.
+    private static final int MEMORY_CLASS_PER_TASK = 48;
 
     /**
-     * Time to wait for first pass to complete before returning partial results.
+     * Time to wait for first pass to complete before returning partial results, while the
+     * latencies of the authorities are unknown.
      */
-    private static final int MAX_FIRST_PASS_WAIT_MILLIS = 500;
+    private static final int DEFAULT_FIRST_PASS_WAIT_MILLIS = 500;
+    private static final int MIN_FIRST_PASS_WAIT_MILLIS = 150;
+    private static final int MAX_FIRST_PASS_WAIT_MILLIS = 1000;
+    /**
+     * Fraction of the authorities the first pass waits for, as far as their latencies tell.
+     */
+    private static final float FIRST_PASS_FRACTION = 0.75f;
+
+    // Shared by all loaders, so that each starts with what the previous ones learned.
+    private static final ProviderLatencies sLatencies = new ProviderLatencies();
 
     protected final State mState;
 
@@ -91,6 +106,15 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
     /* A authority -> QueryTask map */
     private final Map<String, QueryTask> mTasks = new HashMap<>();
 
+    @GuardedBy("mTasks")
+    /* A QueryTask -> filtered, copied and sorted cursors of its roots map, for finished tasks.
+     * Results read them through readers of their own, see loadInBackground. */
+    private final Map<QueryTask, List<Cursor>> mSortedRuns = new HashMap<>();
+    @GuardedBy("mTasks")
+    private int mSortedRunsDimensionId;
+    @GuardedBy("mTasks")
+    private int mSortedRunsDirection;
+
     private CountDownLatch mFirstPassLatch;
     private volatile boolean mFirstPassDone;
 
@@ -118,8 +142,21 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
         // up moments later to fetch thumbnails anyway.
         final ActivityManager am = (ActivityManager) getContext().getSystemService(
                 Context.ACTIVITY_SERVICE);
-        mQueryPermits = new Semaphore(
-                am.isLowRamDevice() ? MAX_OUTSTANDING_TASK_SVELTE : MAX_OUTSTANDING_TASK);
+        // Fair, so that the tasks get permits in the order they were dispatched.
+        mQueryPermits = new Semaphore(getMaxOutstandingTasks(am), true);
+    }
+
+    /**
+     * Returns how many queries may run at once: as many as there are cores, as far as the
+     * memory of the app allows.
+     */
+    private static int getMaxOutstandingTasks(ActivityManager am) {
+        if (am.isLowRamDevice()) {
+            return MAX_OUTSTANDING_TASK_SVELTE;
+        }
+        final int tasks = Math.min(Runtime.getRuntime().availableProcessors(),
+                am.getMemoryClass() / MEMORY_CLASS_PER_TASK);
+        return Math.max(MIN_OUTSTANDING_TASK, Math.min(tasks, MAX_OUTSTANDING_TASK));
     }
 
     @Override
@@ -154,22 +191,37 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
                 throw new InterruptedException("Loading is cancelled!");
             }
 
+            // Dispatch the fastest authorities first, so they aren't kept waiting for permits
+            // by slow ones, and wait about as long as most of them take.
+            final List<QueryTask> tasks = new ArrayList<>(mTasks.values());
+            tasks.sort((lhs, rhs) -> Long.compare(
+                    sLatencies.getEstimate(lhs.authority, DEFAULT_FIRST_PASS_WAIT_MILLIS),
+                    sLatencies.getEstimate(rhs.authority, DEFAULT_FIRST_PASS_WAIT_MILLIS)));
+            final long firstPassWait = Math.max(MIN_FIRST_PASS_WAIT_MILLIS,
+                    Math.min(MAX_FIRST_PASS_WAIT_MILLIS, sLatencies.getPercentile(
+                            mTasks.keySet(), FIRST_PASS_FRACTION, DEFAULT_FIRST_PASS_WAIT_MILLIS)));
+            if (DEBUG) {
+                Log.d(TAG, "Waiting up to " + firstPassWait + "ms for the first pass");
+            }
+
             mFirstPassLatch = new CountDownLatch(mTasks.size());
-            for (QueryTask task : mTasks.values()) {
+            for (QueryTask task : tasks) {
                 mExecutors.lookup(task.authority).execute(task);
             }
 
             try {
-                mFirstPassLatch.await(MAX_FIRST_PASS_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                mFirstPassLatch.await(firstPassWait, TimeUnit.MILLISECONDS);
                 mFirstPassDone = true;
             } catch (InterruptedException e) {
                 throw new RuntimeException(e);
             }
         }
 
-        final long rejectBefore = getRejectBeforeTime();
+        invalidateSortedRunsIfSortChanged();
 
-        // Collect all finished tasks
+        // Collect all finished tasks. Each task's cursors are filtered and sorted only once, the
+        // first time it is seen done; later passes merge the cached runs. Each result reads the
+        // runs through readers of its own, as the UI may still read the previous result.
         boolean allDone = true;
         int totalQuerySize = 0;
         List<Cursor> cursors = new ArrayList<>(mTasks.size());
@@ -181,31 +233,14 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
 
             if (task.isDone()) {
                 try {
-                    final Cursor[] taskCursors = task.get();
-                    if (taskCursors == null || taskCursors.length == 0) {
-                        continue;
+                    List<Cursor> runs = mSortedRuns.get(task);
+                    if (runs == null) {
+                        runs = sortTaskCursors(task);
+                        mSortedRuns.put(task, runs);
                     }
-
-                    totalQuerySize += taskCursors.length;
-                    for (Cursor cursor : taskCursors) {
-                        if (cursor == null) {
-                            // It's possible given an authority, some roots fail to return a cursor
-                            // after a query.
-                            continue;
-                        }
-
-                        final FilteringCursorWrapper filteredCursor =
-                                new FilteringCursorWrapper(cursor) {
-                                    @Override
-                                    public void close() {
-                                        // Ignored, since we manage cursor lifecycle internally
-                                    }
-                                };
-                        filteredCursor.filterHiddenFiles(mState.showHiddenFiles);
-                        filteredCursor.filterMimes(mState.acceptMimes, getRejectMimes());
-                        filteredCursor.filterLastModified(rejectBefore);
-
-                        cursors.add(filteredCursor);
+                    totalQuerySize += task.rootInfos.size();
+                    for (Cursor run : runs) {
+                        cursors.add(SortModel.newCursorReader(run));
                     }
 
                 } catch (InterruptedException e) {
@@ -230,33 +265,83 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
         final DirectoryResult result = new DirectoryResult();
         result.doc = new DocumentInfo();
 
-        final Cursor merged;
-        if (cursors.size() > 0) {
-            merged = new MergeCursor(cursors.toArray(new Cursor[cursors.size()]));
-        } else {
-            // Return something when nobody is ready
-            merged = new MatrixCursor(new String[0]);
-        }
-
-        final Cursor sorted;
-        if (isDocumentsMovable()) {
-            sorted = mState.sortModel.sortCursor(merged, mFileTypeMap);
-        } else {
-            final Cursor notMovableMasked = new NotMovableMaskCursor(merged);
-            sorted = mState.sortModel.sortCursor(notMovableMasked, mFileTypeMap);
-        }
+        final Cursor merged =
+                mState.sortModel.mergeSortedCursors(cursors.toArray(new Cursor[cursors.size()]));
 
         // Tell the UI if this is an in-progress result. When loading is complete, another update is
         // sent with EXTRA_LOADING set to false.
         Bundle extras = new Bundle();
         extras.putBoolean(DocumentsContract.EXTRA_LOADING, !allDone);
-        sorted.setExtras(extras);
+        merged.setExtras(extras);
+
+        // The cutoff moves forward with each pass, so it is applied to the merged rows rather
+        // than to the cached runs. Filtering keeps their order.
+        final Cursor sorted;
+        final long rejectBefore = getRejectBeforeTime();
+        if (rejectBefore > 0) {
+            final FilteringCursorWrapper filtered = new FilteringCursorWrapper(merged);
+            filtered.filterLastModified(rejectBefore);
+            sorted = filtered;
+        } else {
+            sorted = merged;
+        }
 
         result.setCursor(sorted);
+        result.diffFrom(mResult);
 
         return result;
     }
 
+    /**
+     * Filters, copies and sorts the cursors of a finished task, one sorted run per root. The
+     * rows are copied so that each result can read them at positions of its own.
+     */
+    private List<Cursor> sortTaskCursors(QueryTask task)
+            throws InterruptedException, ExecutionException {
+        final Cursor[] taskCursors = task.get();
+        if (taskCursors == null || taskCursors.length == 0) {
+            return Collections.emptyList();
+        }
+
+        final List<Cursor> runs = new ArrayList<>(taskCursors.length);
+        for (Cursor cursor : taskCursors) {
+            if (cursor == null) {
+                // It's possible given an authority, some roots fail to return a cursor
+                // after a query.
+                continue;
+            }
+
+            final FilteringCursorWrapper filteredCursor =
+                    new FilteringCursorWrapper(cursor) {
+                        @Override
+                        public void close() {
+                            // Ignored, since we manage cursor lifecycle internally
+                        }
+                    };
+            filteredCursor.filterHiddenFiles(mState.showHiddenFiles);
+            filteredCursor.filterMimes(mState.acceptMimes, getRejectMimes());
+
+            final Cursor run = isDocumentsMovable()
+                    ? filteredCursor
+                    : new NotMovableMaskCursor(filteredCursor);
+            runs.add(mState.sortModel.sortCursor(SnapshotCursor.copyOf(run), mFileTypeMap));
+        }
+        return runs;
+    }
+
+    /**
+     * Drops the cached sorted runs if the sort order changed since they were built.
+     */
+    private void invalidateSortedRunsIfSortChanged() {
+        final int dimensionId = mState.sortModel.getSortedDimensionId();
+        final int direction = mState.sortModel.getCurrentSortDirection();
+        if (dimensionId != mSortedRunsDimensionId || direction != mSortedRunsDirection) {
+            mSortedRuns.clear();
+            mSortedRunsDimensionId = dimensionId;
+            mSortedRunsDirection = direction;
+        }
+    }
+
     /**
      * Returns a map of Authority -> rootInfos.
      */
@@ -344,6 +429,7 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
             for (QueryTask task : mTasks.values()) {
                 mExecutors.lookup(task.authority).execute(() -> FileUtils.closeQuietly(task));
             }
+            mSortedRuns.clear();
         }
         FileUtils.closeQuietly(mResult);
         mResult = null;
@@ -389,16 +475,20 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
                 return;
             }
 
+            final long queuedTime = SystemClock.elapsedRealtime();
             try {
                 mQueryPermits.acquire();
             } catch (InterruptedException e) {
                 return;
             }
 
+            final long startTime = SystemClock.elapsedRealtime();
             try {
                 runInternal();
             } finally {
                 mQueryPermits.release();
+                ExecutorStats.record(authority, "query permit", startTime - queuedTime,
+                        SystemClock.elapsedRealtime() - startTime);
             }
         }
 
@@ -415,6 +505,7 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
                 return;
             }
 
+            final long startTime = SystemClock.elapsedRealtime();
             final int rootInfoCount = rootInfos.size();
             final Cursor[] res = new Cursor[rootInfoCount];
             mCursors = new Cursor[rootInfoCount];
@@ -444,6 +535,7 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
                 }
             }
 
+            sLatencies.record(authority, SystemClock.elapsedRealtime() - startTime);
             set(mCursors);
 
             mFirstPassLatch.countDown();
@@ -470,20 +562,6 @@ public abstract class MultiRootDocumentsLoader extends AsyncTaskLoader<Directory
     }
 
     private boolean checkIfCursorStale(DirectoryResult result) {
-        if (result == null || result.getCursor() == null || result.getCursor().isClosed()) {
-            return true;
-        }
-        Cursor cursor = result.getCursor();
-        try {
-            cursor.moveToPosition(-1);
-            for (int pos = 0; pos < cursor.getCount(); ++pos) {
-                if (!cursor.moveToNext()) {
-                    return true;
-                }
-            }
-        } catch (Exception e) {
-            return true;
-        }
-        return false;
+        return result == null || result.isStale();
     }
 }
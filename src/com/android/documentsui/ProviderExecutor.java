@@ -17,94 +17,402 @@
 package com.android.documentsui;
 
 import android.os.AsyncTask;
+import android.os.SystemClock;
 
 import androidx.annotation.GuardedBy;
+import androidx.annotation.IntDef;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
 import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class ProviderExecutor extends Thread implements Executor {
+/**
+ * Runs the tasks of an authority one at a time, by {@link Priority} and then in order, without
+ * starving tasks of lower priority. Thumbnails run newest first, as the newest are those the user
+ * scrolled to. The executors of all authorities share a bounded pool of threads, which are
+ * stopped when idle, and an executor is dropped once it has been idle for a while. When every
+ * thread of the pool is busy, e.g. waiting on hung providers, listings and visible thumbnails run
+ * on a few threads kept for them, so that they don't wait behind other authorities.
+ */
+public class ProviderExecutor implements Executor {
+
+    // Tasks mostly wait on providers, so there are more threads than cores.
+    @VisibleForTesting
+    static final int MAX_THREADS = 8;
+    // Threads for listings and visible thumbnails while every thread of the pool is busy.
+    @VisibleForTesting
+    static final int MAX_OVERFLOW_THREADS = 2;
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 30;
+    @VisibleForTesting
+    static final long IDLE_EXECUTOR_TIMEOUT_MILLIS = 60_000;
+
+    private static final ThreadPoolExecutor sPool = createPool();
+    // Threads of sPool running tasks. Unlike ThreadPoolExecutor.getActiveCount(), it is exact.
+    private static final AtomicInteger sBusyThreads = new AtomicInteger();
+    // Threads for the tasks the user waits for while sPool is busy. When they are busy too, the
+    // tasks wait for sPool like the others.
+    private static final ThreadPoolExecutor sOverflowPool = createOverflowPool();
 
     @GuardedBy("sExecutors")
     private static HashMap<String, ProviderExecutor> sExecutors = new HashMap<>();
 
     public static ProviderExecutor forAuthority(String authority) {
         synchronized (sExecutors) {
+            reclaimIdleExecutorsLocked();
             ProviderExecutor executor = sExecutors.get(authority);
             if (executor == null) {
-                executor = new ProviderExecutor();
-                executor.setName("ProviderExecutor: " + authority);
-                executor.start();
+                executor = new ProviderExecutor(authority);
                 sExecutors.put(authority, executor);
             }
             return executor;
         }
     }
 
+    /**
+     * Returns the number of tasks queued or running, by authority, for the authorities with
+     * an executor.
+     */
+    public static Map<String, Integer> getQueueDepths() {
+        final Map<String, Integer> depths = new TreeMap<>();
+        synchronized (sExecutors) {
+            for (ProviderExecutor executor : sExecutors.values()) {
+                depths.put(String.valueOf(executor.mAuthority), executor.getQueueDepth());
+            }
+        }
+        return depths;
+    }
+
+    private static ThreadPoolExecutor createPool() {
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS,
+                THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                createThreadFactory("ProviderExecutor #"));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private static ThreadPoolExecutor createOverflowPool() {
+        return new ThreadPoolExecutor(0, MAX_OVERFLOW_THREADS,
+                THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                createThreadFactory("ProviderExecutor overflow #"));
+    }
+
+    private static ThreadFactory createThreadFactory(String namePrefix) {
+        final AtomicInteger count = new AtomicInteger();
+        return runnable -> new Thread(runnable, namePrefix + count.incrementAndGet());
+    }
+
+    @GuardedBy("sExecutors")
+    private static void reclaimIdleExecutorsLocked() {
+        final long now = SystemClock.uptimeMillis();
+        final Iterator<ProviderExecutor> it = sExecutors.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().reclaimIfIdle(now)) {
+                it.remove();
+            }
+        }
+    }
+
     public interface Preemptable {
         void preempt();
     }
 
-    private final LinkedBlockingQueue<Runnable> mQueue = new LinkedBlockingQueue<Runnable>();
+    /**
+     * The order the tasks of an authority run in. Listings the user waits for come first, then
+     * thumbnails on screen, thumbnails about to scroll into view, and work done ahead of time.
+     */
+    @IntDef({
+            PRIORITY_LISTING,
+            PRIORITY_VISIBLE_THUMBNAIL,
+            PRIORITY_OFFSCREEN_THUMBNAIL,
+            PRIORITY_SPECULATIVE
+    })
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Priority {}
+    public static final int PRIORITY_LISTING = 0;
+    public static final int PRIORITY_VISIBLE_THUMBNAIL = 1;
+    public static final int PRIORITY_OFFSCREEN_THUMBNAIL = 2;
+    public static final int PRIORITY_SPECULATIVE = 3;
+    private static final int PRIORITY_COUNT = 4;
+    // Kinds of tasks in ExecutorStats, by priority.
+    private static final String[] PRIORITY_NAMES =
+            { "listing", "visible thumbnail", "offscreen thumbnail", "speculative" };
 
-    private final ArrayList<WeakReference<Preemptable>> mPreemptable = new ArrayList<>();
+    // Times a waiting task may be passed over by tasks of higher priority before it runs anyway.
+    @VisibleForTesting
+    static final int MAX_PASSED_OVER = 4;
 
+    private final String mAuthority;
+
+    // Queued tasks by priority.
+    @GuardedBy("mQueues")
+    private final List<ArrayDeque<Runnable>> mQueues = new ArrayList<>(PRIORITY_COUNT);
+    // How often the next task of each queue was passed over by tasks of higher priority.
+    @GuardedBy("mQueues")
+    private final int[] mPassedOver = new int[PRIORITY_COUNT];
+    // Whether a pool thread was asked to run the tasks of this executor.
+    @GuardedBy("mQueues")
+    private boolean mScheduled;
+    // Whether a thread of sOverflowPool was asked to run the tasks of this executor.
+    @GuardedBy("mQueues")
+    private boolean mOverflowScheduled;
+    // Whether a pool thread runs the tasks of this executor. Only one does at a time.
+    @GuardedBy("mQueues")
+    private boolean mRunning;
+    @GuardedBy("mQueues")
+    private long mIdleSince = SystemClock.uptimeMillis();
+    // Whether this executor was dropped. Tasks still given to it go to the current executor of
+    // the authority, so that they stay in order.
+    @GuardedBy("mQueues")
+    private boolean mReclaimed;
+
+    private final Executor[] mExecutors = new Executor[PRIORITY_COUNT];
+
+    @GuardedBy("mPreemptable")
+    private final ArrayList<PreemptableTask> mPreemptable = new ArrayList<>();
+
+    private ProviderExecutor(String authority) {
+        mAuthority = authority;
+        for (int priority = 0; priority < PRIORITY_COUNT; priority++) {
+            final int p = priority;
+            mQueues.add(new ArrayDeque<>());
+            mExecutors[p] = command -> enqueue(command, p);
+        }
+    }
+
+    /**
+     * Preempts the outstanding speculative tasks. Thumbnails aren't preempted, as they are
+     * needed still, and tasks of higher priority run before them anyway.
+     */
     private void preempt() {
         synchronized (mPreemptable) {
-            int count = 0;
-            for (WeakReference<Preemptable> ref : mPreemptable) {
-                final Preemptable p = ref.get();
-                if (p != null) {
-                    count++;
-                    p.preempt();
+            final Iterator<PreemptableTask> it = mPreemptable.iterator();
+            while (it.hasNext()) {
+                final PreemptableTask task = it.next();
+                final AsyncTask<?, ?, ?> asyncTask = task.ref.get();
+                if (asyncTask == null || asyncTask.isCancelled()
+                        || asyncTask.getStatus() == AsyncTask.Status.FINISHED) {
+                    it.remove();
+                } else if (task.priority == PRIORITY_SPECULATIVE) {
+                    ((Preemptable) asyncTask).preempt();
+                    ExecutorStats.recordPreempted(
+                            String.valueOf(mAuthority), PRIORITY_NAMES[task.priority]);
+                    it.remove();
                 }
             }
-            mPreemptable.clear();
         }
     }
 
     /**
-     * Execute the given task. If given task is not {@link Preemptable}, it will
-     * preempt all outstanding preemptable tasks.
+     * Execute the given task, as a listing if it isn't {@link Preemptable}, and as a visible
+     * thumbnail if it is.
      */
     public <P> void execute(AsyncTask<P, ?, ?> task, P... params) {
+        execute(task instanceof Preemptable ? PRIORITY_VISIBLE_THUMBNAIL : PRIORITY_LISTING,
+                task, params);
+    }
+
+    /**
+     * Execute the given task with the given priority. If given task is not {@link Preemptable},
+     * it will preempt all outstanding speculative tasks.
+     */
+    public <P> void execute(@Priority int priority, AsyncTask<P, ?, ?> task, P... params) {
+        final ProviderExecutor current = getCurrent();
+        if (current != this) {
+            current.execute(priority, task, params);
+            return;
+        }
         if (task instanceof Preemptable) {
             synchronized (mPreemptable) {
-                mPreemptable.add(new WeakReference<Preemptable>((Preemptable) task));
+                mPreemptable.add(new PreemptableTask(task, priority));
             }
-            task.executeOnExecutor(mNonPreemptingExecutor, params);
         } else {
-            task.executeOnExecutor(this, params);
+            preempt();
         }
+        task.executeOnExecutor(mExecutors[priority], params);
     }
 
-    private Executor mNonPreemptingExecutor = new Executor() {
-        @Override
-        public void execute(Runnable command) {
-            assert(command != null);
-            mQueue.add(command);
-        }
-    };
-
+    /**
+     * Execute the given task as a listing. It will preempt all outstanding speculative tasks.
+     */
     @Override
     public void execute(Runnable command) {
+        final ProviderExecutor current = getCurrent();
+        if (current != this) {
+            current.execute(command);
+            return;
+        }
         preempt();
         assert(command != null);
-        mQueue.add(command);
+        enqueue(command, PRIORITY_LISTING);
     }
 
-    @Override
-    public void run() {
+    /** Returns the number of tasks queued or running. */
+    public int getQueueDepth() {
+        synchronized (mQueues) {
+            int depth = mRunning ? 1 : 0;
+            for (ArrayDeque<Runnable> queue : mQueues) {
+                depth += queue.size();
+            }
+            return depth;
+        }
+    }
+
+    private ProviderExecutor getCurrent() {
+        synchronized (mQueues) {
+            if (!mReclaimed) {
+                return this;
+            }
+        }
+        return forAuthority(mAuthority);
+    }
+
+    private void enqueue(Runnable command, @Priority int priority) {
+        synchronized (mQueues) {
+            if (!mReclaimed) {
+                mQueues.get(priority).add(ExecutorStats.wrap(
+                        String.valueOf(mAuthority), PRIORITY_NAMES[priority], command));
+                if (isForeground(priority) && !mRunning && !mOverflowScheduled
+                        && isPoolBusy()) {
+                    // Don't wait for a thread of the pool, maybe behind hung providers. If a
+                    // thread was asked for already, whichever starts first runs the tasks.
+                    try {
+                        sOverflowPool.execute(this::runQueue);
+                        mScheduled = true;
+                        mOverflowScheduled = true;
+                    } catch (RejectedExecutionException e) {
+                        // The overflow threads are busy too, wait for the pool.
+                    }
+                }
+                if (!mScheduled) {
+                    mScheduled = true;
+                    sPool.execute(this::runQueueOnPool);
+                }
+                return;
+            }
+        }
+        forAuthority(mAuthority).enqueue(command, priority);
+    }
+
+    /**
+     * Returns the next task to run: the next of the highest priority, unless a task of lower
+     * priority was passed over too often.
+     */
+    @GuardedBy("mQueues")
+    private @Nullable Runnable pollLocked() {
+        int next = -1;
+        for (int priority = 0; priority < PRIORITY_COUNT; priority++) {
+            if (mQueues.get(priority).isEmpty()) {
+                continue;
+            }
+            if (next == -1) {
+                next = priority;
+            } else if (mPassedOver[priority] >= MAX_PASSED_OVER) {
+                next = priority;
+                break;
+            }
+        }
+        if (next == -1) {
+            return null;
+        }
+        for (int priority = next + 1; priority < PRIORITY_COUNT; priority++) {
+            if (!mQueues.get(priority).isEmpty()) {
+                mPassedOver[priority]++;
+            }
+        }
+        mPassedOver[next] = 0;
+        final ArrayDeque<Runnable> queue = mQueues.get(next);
+        return isLastInFirstOut(next) ? queue.pollLast() : queue.poll();
+    }
+
+    private static boolean isForeground(@Priority int priority) {
+        return priority == PRIORITY_LISTING || priority == PRIORITY_VISIBLE_THUMBNAIL;
+    }
+
+    private static boolean isPoolBusy() {
+        return sBusyThreads.get() >= MAX_THREADS;
+    }
+
+    private static boolean isLastInFirstOut(@Priority int priority) {
+        return priority == PRIORITY_VISIBLE_THUMBNAIL || priority == PRIORITY_OFFSCREEN_THUMBNAIL;
+    }
+
+    private void runQueueOnPool() {
+        sBusyThreads.incrementAndGet();
+        try {
+            runQueue();
+        } finally {
+            sBusyThreads.decrementAndGet();
+        }
+    }
+
+    private void runQueue() {
+        synchronized (mQueues) {
+            if (mRunning) {
+                // Another thread started first.
+                return;
+            }
+            mRunning = true;
+        }
         while (true) {
+            final Runnable command;
+            synchronized (mQueues) {
+                command = pollLocked();
+                if (command == null) {
+                    mRunning = false;
+                    mScheduled = false;
+                    mOverflowScheduled = false;
+                    mIdleSince = SystemClock.uptimeMillis();
+                    return;
+                }
+            }
             try {
-                final Runnable command = mQueue.take();
                 command.run();
-            } catch (InterruptedException e) {
-                // That was weird; let's go look for more tasks.
+            } catch (RuntimeException | Error e) {
+                // Keep running the tasks queued after it, on another thread.
+                synchronized (mQueues) {
+                    mRunning = false;
+                }
+                sPool.execute(this::runQueueOnPool);
+                throw e;
             }
         }
     }
+
+    private boolean reclaimIfIdle(long now) {
+        synchronized (mQueues) {
+            if (mScheduled || getQueueDepth() > 0
+                    || now - mIdleSince < IDLE_EXECUTOR_TIMEOUT_MILLIS) {
+                return false;
+            }
+            mReclaimed = true;
+            return true;
+        }
+    }
+
+    private static final class PreemptableTask {
+        final WeakReference<AsyncTask<?, ?, ?>> ref;
+        final @Priority int priority;
+
+        PreemptableTask(AsyncTask<?, ?, ?> task, @Priority int priority) {
+            ref = new WeakReference<>(task);
+            this.priority = priority;
+        }
+    }
 }
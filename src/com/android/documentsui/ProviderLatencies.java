@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import androidx.annotation.GuardedBy;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps how long the queries of each authority took, as exponentially weighted moving averages
+ * of the latency and of its deviation, the way TCP estimates round-trip times. Thread safe.
+ */
+public final class ProviderLatencies {
+
+    // Weight of a new sample in the averages.
+    private static final float ALPHA = 0.25f;
+    // Deviations above the average, for a latency most queries finish within.
+    private static final int DEVIATION_FACTOR = 2;
+
+    @GuardedBy("mLatencies")
+    private final Map<String, Latency> mLatencies = new HashMap<>();
+
+    /** Records a query of {@code authority} that took {@code millis}. */
+    public void record(String authority, long millis) {
+        synchronized (mLatencies) {
+            final Latency latency = mLatencies.get(authority);
+            if (latency == null) {
+                mLatencies.put(authority, new Latency(millis));
+            } else {
+                latency.add(millis);
+            }
+        }
+    }
+
+    /**
+     * Returns a latency most queries of {@code authority} finish within, or
+     * {@code defaultMillis} if none was recorded.
+     */
+    public long getEstimate(String authority, long defaultMillis) {
+        synchronized (mLatencies) {
+            final Latency latency = mLatencies.get(authority);
+            return latency == null
+                    ? defaultMillis
+                    : (long) (latency.average + DEVIATION_FACTOR * latency.deviation);
+        }
+    }
+
+    /**
+     * Returns the time by which the queries of about {@code fraction} of {@code authorities}
+     * are expected to finish, counting those without history as {@code defaultMillis}.
+     */
+    public long getPercentile(
+            Collection<String> authorities, float fraction, long defaultMillis) {
+        if (authorities.isEmpty()) {
+            return defaultMillis;
+        }
+        final long[] estimates = new long[authorities.size()];
+        int i = 0;
+        for (String authority : authorities) {
+            estimates[i++] = getEstimate(authority, defaultMillis);
+        }
+        Arrays.sort(estimates);
+        final int index = (int) Math.ceil(fraction * estimates.length) - 1;
+        return estimates[Math.max(0, Math.min(index, estimates.length - 1))];
+    }
+
+    private static final class Latency {
+        float average;
+        float deviation;
+
+        Latency(long millis) {
+            average = millis;
+            deviation = millis / 2f;
+        }
+
+        void add(long millis) {
+            deviation += ALPHA * (Math.abs(millis - average) - deviation);
+            average += ALPHA * (millis - average);
+        }
+    }
+}
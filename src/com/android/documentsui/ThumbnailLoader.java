@@ -29,6 +29,7 @@ import android.os.AsyncTask;
 import android.os.CancellationSignal;
 import android.os.FileUtils;
 import android.os.OperationCanceledException;
+import android.os.SystemClock;
 import android.provider.DocumentsContract;
 import android.util.Log;
 import android.view.View;
@@ -67,6 +68,7 @@ public final class ThumbnailLoader extends AsyncTask<Uri, Void, Bitmap> implemen
     private final Consumer<Bitmap> mCallback;
     private final boolean mAddToCache;
     private final CancellationSignal mSignal;
+    private long mStartTime;
 
     /**
      * @param uri - to a thumbnail.
@@ -99,6 +101,11 @@ public final class ThumbnailLoader extends AsyncTask<Uri, Void, Bitmap> implemen
         mSignal.cancel();
     }
 
+    @Override
+    protected void onPreExecute() {
+        mStartTime = SystemClock.uptimeMillis();
+    }
+
     @Override
     protected Bitmap doInBackground(Uri... params) {
         if (isCancelled()) {
@@ -131,7 +138,10 @@ public final class ThumbnailLoader extends AsyncTask<Uri, Void, Bitmap> implemen
 
     @Override
     protected void onPostExecute(Bitmap result) {
-        if (VERBOSE) Log.v(TAG, "Loader task for " + mUri + " completed");
+        if (VERBOSE) {
+            Log.v(TAG, "Loader task for " + mUri + " completed "
+                    + (SystemClock.uptimeMillis() - mStartTime) + "ms after it was queued");
+        }
 
         if (mIconThumb.getTag() == this) {
             mIconThumb.setTag(null);
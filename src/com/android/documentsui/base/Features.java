@@ -39,6 +39,8 @@ public interface Features {
     boolean isContentPagingEnabled();
     boolean isContentRefreshEnabled();
     boolean isDebugSupportEnabled();
+    boolean isDirectoryPrefetchEnabled();
+    boolean isDirectorySnapshotEnabled();
     boolean isFoldersInSearchResultsEnabled();
     boolean isGestureScaleEnabled();
     boolean isInspectorEnabled();
@@ -122,6 +124,16 @@ public interface Features {
             return isDebugPolicyEnabled() && isFunPolicyEnabled();
         }
 
+        @Override
+        public boolean isDirectoryPrefetchEnabled() {
+            return isEnabled(R.bool.feature_directory_prefetch);
+        }
+
+        @Override
+        public boolean isDirectorySnapshotEnabled() {
+            return isEnabled(R.bool.feature_directory_snapshot);
+        }
+
         @Override
         public boolean isFoldersInSearchResultsEnabled() {
             return isEnabled(R.bool.feature_folders_in_search_results);
@@ -16,34 +16,43 @@
 
 package com.android.documentsui.base;
 
-import static com.android.documentsui.base.DocumentInfo.getCursorLong;
-import static com.android.documentsui.base.DocumentInfo.getCursorString;
 import static com.android.documentsui.base.SharedMinimal.DEBUG;
 import static com.android.documentsui.base.SharedMinimal.TAG;
 
 import android.database.AbstractCursor;
 import android.database.ContentObserver;
 import android.database.Cursor;
+import android.net.Uri;
 import android.os.Bundle;
 import android.provider.DocumentsContract.Document;
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Cursor wrapper that filters cursor results by given conditions.
+ *
+ * <p>Filters are registered up front and applied together the first time the cursor is read:
+ * column indices are resolved once, and every row is tested against all filters in a single
+ * pass that fills a single positions array.
  */
 public class FilteringCursorWrapper extends AbstractCursor {
     private final Cursor mCursor;
 
+    private final List<RowFilter> mFilters = new ArrayList<>();
+
     private int[] mPositions;
     private int mCount;
+    private boolean mFiltered;
 
     public FilteringCursorWrapper(Cursor cursor) {
         mCursor = cursor;
         mCount = cursor.getCount();
-        mPositions = new int[mCount];
-        for (int i = 0; i < mCount; i++) {
-            mPositions[i] = i;
-        }
     }
 
     /**
@@ -53,20 +62,41 @@ public class FilteringCursorWrapper extends AbstractCursor {
      * @param rejectMimes blocked list of mimes
      */
     public void filterMimes(String[] acceptMimes, String[] rejectMimes) {
-        filterByCondition((cursor) -> {
-            final String mimeType = getCursorString(cursor, Document.COLUMN_MIME_TYPE);
-            if (rejectMimes != null && MimeTypes.mimeMatches(rejectMimes, mimeType)) {
-                return false;
+        final MimeMatcher accept = MimeMatcher.compile(acceptMimes);
+        final MimeMatcher reject = rejectMimes != null ? MimeMatcher.compile(rejectMimes) : null;
+        addFilter(new RowFilter("mimes") {
+            private int mMimeTypeIndex;
+
+            @Override
+            void bind(Cursor cursor) {
+                mMimeTypeIndex = cursor.getColumnIndex(Document.COLUMN_MIME_TYPE);
+            }
+
+            @Override
+            boolean accept(Cursor cursor) {
+                final String mimeType = getString(cursor, mMimeTypeIndex);
+                if (reject != null && reject.matches(mimeType)) {
+                    return false;
+                }
+                return accept.matches(mimeType);
             }
-            return MimeTypes.mimeMatches(acceptMimes, mimeType);
         });
     }
 
     /** Filters cursor according to last modified time, and reject earlier than given timestamp. */
     public void filterLastModified(long rejectBeforeTimestamp) {
-        filterByCondition((cursor) -> {
-            final long lastModified = getCursorLong(cursor, Document.COLUMN_LAST_MODIFIED);
-            return lastModified >= rejectBeforeTimestamp;
+        addFilter(new RowFilter("lastModified") {
+            private int mLastModifiedIndex;
+
+            @Override
+            void bind(Cursor cursor) {
+                mLastModifiedIndex = cursor.getColumnIndex(Document.COLUMN_LAST_MODIFIED);
+            }
+
+            @Override
+            boolean accept(Cursor cursor) {
+                return getLong(cursor, mLastModifiedIndex) >= rejectBeforeTimestamp;
+            }
         });
     }
 
@@ -76,17 +106,43 @@ public class FilteringCursorWrapper extends AbstractCursor {
             return;
         }
 
-        filterByCondition((cursor) -> {
-            // Judge by name and documentId separately because for some providers
-            // e.g. DownloadProvider, documentId may not contain file name.
-            final String name = getCursorString(cursor, Document.COLUMN_DISPLAY_NAME);
-            final String documentId = getCursorString(cursor, Document.COLUMN_DOCUMENT_ID);
-            boolean documentIdHidden = documentId != null && documentId.contains("/.");
-            boolean fileNameHidden = name != null && name.startsWith(".");
-            return !(documentIdHidden || fileNameHidden);
+        addFilter(new RowFilter("hidden") {
+            private int mDisplayNameIndex;
+            private int mDocumentIdIndex;
+
+            @Override
+            void bind(Cursor cursor) {
+                mDisplayNameIndex = cursor.getColumnIndex(Document.COLUMN_DISPLAY_NAME);
+                mDocumentIdIndex = cursor.getColumnIndex(Document.COLUMN_DOCUMENT_ID);
+            }
+
+            @Override
+            boolean accept(Cursor cursor) {
+                // Judge by name and documentId separately because for some providers
+                // e.g. DownloadProvider, documentId may not contain file name.
+                final String name = getString(cursor, mDisplayNameIndex);
+                if (name != null && name.startsWith(".")) {
+                    return false;
+                }
+                final String documentId = getString(cursor, mDocumentIdIndex);
+                return documentId == null || !documentId.contains("/.");
+            }
         });
     }
 
+    /**
+     * Returns how many rows each registered filter rejected, keyed by filter name, in the order
+     * the filters were registered. A row is counted against the first filter that rejects it.
+     */
+    public Map<String, Integer> getRejectedCounts() {
+        ensureFiltered();
+        final Map<String, Integer> counts = new LinkedHashMap<>();
+        for (RowFilter filter : mFilters) {
+            counts.merge(filter.mName, filter.mRejected, Integer::sum);
+        }
+        return counts;
+    }
+
     @Override
     public Bundle getExtras() {
         return mCursor.getExtras();
@@ -100,7 +156,8 @@ public class FilteringCursorWrapper extends AbstractCursor {
 
     @Override
     public boolean onMove(int oldPosition, int newPosition) {
-        return mCursor.moveToPosition(mPositions[newPosition]);
+        return mCursor.moveToPosition(
+                mPositions != null ? mPositions[newPosition] : newPosition);
     }
 
     @Override
@@ -110,6 +167,7 @@ public class FilteringCursorWrapper extends AbstractCursor {
 
     @Override
     public int getCount() {
+        ensureFiltered();
         return mCount;
     }
 
@@ -163,26 +221,101 @@ public class FilteringCursorWrapper extends AbstractCursor {
         mCursor.unregisterContentObserver(observer);
     }
 
-    private interface FilteringCondition {
-        boolean accept(Cursor cursor);
+    @Override
+    public Uri getNotificationUri() {
+        return mCursor.getNotificationUri();
+    }
+
+    private void addFilter(RowFilter filter) {
+        if (mFiltered) {
+            throw new IllegalStateException("Filters must be added before the cursor is read.");
+        }
+        mFilters.add(filter);
     }
 
-    private void filterByCondition(FilteringCondition condition) {
-        final int oldCount = this.getCount();
-        int[] newPositions = new int[oldCount];
+    private void ensureFiltered() {
+        if (mFiltered) {
+            return;
+        }
+        mFiltered = true;
+
+        if (mFilters.isEmpty()) {
+            return;
+        }
+
+        final int filterCount = mFilters.size();
+        for (int i = 0; i < filterCount; i++) {
+            mFilters.get(i).bind(mCursor);
+        }
+
+        final int oldCount = mCount;
+        final int[] newPositions = new int[oldCount];
         int newCount = 0;
 
-        this.moveToPosition(-1);
-        while (this.moveToNext() && newCount < oldCount) {
-            if (condition.accept(mCursor)) {
-                newPositions[newCount++] = mPositions[this.getPosition()];
+        mCursor.moveToPosition(-1);
+        for (int pos = 0; pos < oldCount && mCursor.moveToNext(); pos++) {
+            boolean accepted = true;
+            for (int i = 0; i < filterCount; i++) {
+                final RowFilter filter = mFilters.get(i);
+                if (!filter.accept(mCursor)) {
+                    filter.mRejected++;
+                    accepted = false;
+                    break;
+                }
+            }
+            if (accepted) {
+                newPositions[newCount++] = pos;
             }
         }
 
-        if (DEBUG && newCount != this.getCount()) {
-            Log.d(TAG, "Before filtering " + oldCount + ", after " + newCount);
+        if (DEBUG && newCount != oldCount) {
+            Log.d(TAG, "Before filtering " + oldCount + ", after " + newCount
+                    + ", rejected " + getRejectedCounts());
         }
         mCount = newCount;
         mPositions = newPositions;
     }
+
+    private static @Nullable String getString(Cursor cursor, int index) {
+        return (index != -1) ? cursor.getString(index) : null;
+    }
+
+    /**
+     * Same as {@link DocumentInfo#getCursorLong}, with the column index already resolved.
+     */
+    private static long getLong(Cursor cursor, int index) {
+        if (index == -1) {
+            return -1;
+        }
+        switch (cursor.getType(index)) {
+            case FIELD_TYPE_NULL:
+                return -1;
+            case FIELD_TYPE_INTEGER:
+                return cursor.getLong(index);
+            default:
+                try {
+                    return Long.parseLong(cursor.getString(index));
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+        }
+    }
+
+    /**
+     * A condition rows must meet to be kept.
+     */
+    private abstract static class RowFilter {
+        private final String mName;
+        private int mRejected;
+
+        RowFilter(String name) {
+            mName = name;
+        }
+
+        /** Resolves the column indices this filter reads. Called once before filtering. */
+        abstract void bind(Cursor cursor);
+
+        /** Returns whether the current row of the cursor should be kept. */
+        abstract boolean accept(Cursor cursor);
+    }
 }
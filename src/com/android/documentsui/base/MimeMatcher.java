@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.base;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A set of MIME type filters compiled once for repeated matching. Gives the same answers as
+ * {@link MimeTypes#mimeMatches(String[], String)} with the same filters, without re-examining
+ * every filter string on each call, and without allocating.
+ *
+ * <p>Filters are sorted into buckets: a match-all flag for {@code *}{@code /*} (or a null
+ * filter), a hash set of exact types, and the type prefixes of {@code type/*} wildcards. There
+ * are rarely more than a couple of wildcards, so they are checked in place with
+ * {@link String#regionMatches} rather than by extracting the type of the tested string.
+ *
+ * <p>This class has no Android dependencies so it can be benchmarked on the host.
+ */
+public final class MimeMatcher {
+
+    /** Matches every MIME type, like a null filter array. */
+    public static final MimeMatcher ANY = new MimeMatcher(true, true, new HashSet<>(),
+            new String[0]);
+
+    private final boolean mMatchesNull;
+    private final boolean mMatchesAll;
+    private final Set<String> mExact;
+    private final String[] mTypePrefixes;
+
+    private MimeMatcher(
+            boolean matchesNull, boolean matchesAll, Set<String> exact, String[] typePrefixes) {
+        mMatchesNull = matchesNull;
+        mMatchesAll = matchesAll;
+        mExact = exact;
+        mTypePrefixes = typePrefixes;
+    }
+
+    /**
+     * Compiles the given filters. A null array matches everything, including a null MIME type;
+     * an empty array matches nothing.
+     */
+    public static MimeMatcher compile(String[] filters) {
+        if (filters == null) {
+            return ANY;
+        }
+
+        boolean matchesAll = false;
+        final Set<String> exact = new HashSet<>();
+        final Set<String> typePrefixes = new LinkedHashSet<>();
+        for (String filter : filters) {
+            if (filter == null || "*/*".equals(filter)) {
+                matchesAll = true;
+            } else if (filter.endsWith("/*")) {
+                typePrefixes.add(filter.substring(0, filter.indexOf('/')));
+            } else {
+                exact.add(filter);
+            }
+        }
+
+        return new MimeMatcher(false, matchesAll, exact,
+                typePrefixes.toArray(new String[typePrefixes.size()]));
+    }
+
+    /**
+     * Returns whether the given MIME type matches any of the compiled filters.
+     */
+    public boolean matches(String mimeType) {
+        if (mimeType == null) {
+            return mMatchesNull;
+        }
+        if (mMatchesAll || mExact.contains(mimeType)) {
+            return true;
+        }
+        for (String prefix : mTypePrefixes) {
+            if (mimeType.regionMatches(0, prefix, 0, prefix.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "MimeMatcher{"
+                + "matchesAll=" + mMatchesAll
+                + ", exact=" + mExact
+                + ", typePrefixes=" + Arrays.toString(mTypePrefixes)
+                + "}";
+    }
+}
@@ -120,6 +120,11 @@ public final class MimeTypes {
      */
     public static final String[] VISUAL_MIMES = new String[]{IMAGE_MIME, VIDEO_MIME};
 
+    /**
+     * {@link #VISUAL_MIMES} compiled for matching on every bind.
+     */
+    public static final MimeMatcher VISUAL_MIMES_MATCHER = MimeMatcher.compile(VISUAL_MIMES);
+
     public static @Nullable String[] splitMimeType(String mimeType) {
         final String[] groups = mimeType.split("/");
 
@@ -49,6 +49,7 @@ import com.android.documentsui.R;
 import com.android.documentsui.ui.MessageBuilder;
 import com.android.documentsui.util.VersionUtils;
 
+import java.text.CollationKey;
 import java.text.Collator;
 import java.time.Instant;
 import java.time.LocalDateTime;
@@ -225,6 +226,15 @@ public final class Shared {
      * before other items.
      */
     public static int compareToIgnoreCaseNullable(String lhs, String rhs) {
+        return compareToIgnoreCaseNullable(sCollator, lhs, rhs);
+    }
+
+    /**
+     * Same as {@link #compareToIgnoreCaseNullable(String, String)}, using the given collator.
+     *
+     * @param collator a collator returned by {@link #newCollator}
+     */
+    public static int compareToIgnoreCaseNullable(Collator collator, String lhs, String rhs) {
         final boolean leftEmpty = TextUtils.isEmpty(lhs);
         final boolean rightEmpty = TextUtils.isEmpty(rhs);
 
@@ -232,7 +242,40 @@ public final class Shared {
         if (leftEmpty) return -1;
         if (rightEmpty) return 1;
 
-        return sCollator.compare(lhs, rhs);
+        return collator.compare(lhs, rhs);
+    }
+
+    /**
+     * Returns a new copy of the collator used by {@link #compareToIgnoreCaseNullable}. Collators
+     * aren't thread-safe, so callers generating keys on several threads need one each.
+     */
+    public static Collator newCollator() {
+        return (Collator) sCollator.clone();
+    }
+
+    /**
+     * Returns the collation key for the given string, or null if it is empty. Comparing two keys
+     * with {@link #compareCollationKeysNullable} gives the same result as comparing the strings
+     * with {@link #compareToIgnoreCaseNullable}, but is much cheaper when each string is compared
+     * many times, e.g. while sorting.
+     *
+     * @param collator a collator returned by {@link #newCollator}
+     */
+    public static @Nullable CollationKey getCollationKeyNullable(
+            Collator collator, @Nullable String s) {
+        return TextUtils.isEmpty(s) ? null : collator.getCollationKey(s);
+    }
+
+    /**
+     * Compares keys from {@link #getCollationKeyNullable}. Empty strings go first.
+     */
+    public static int compareCollationKeysNullable(
+            @Nullable CollationKey lhs, @Nullable CollationKey rhs) {
+        if (lhs == null && rhs == null) return 0;
+        if (lhs == null) return -1;
+        if (rhs == null) return 1;
+
+        return lhs.compareTo(rhs);
     }
 
     private static boolean isSystemApp(ApplicationInfo ai) {
@@ -0,0 +1,479 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.base;
+
+import android.content.ContentResolver;
+import android.database.AbstractCursor;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.provider.DocumentsContract.Document;
+
+import androidx.annotation.Nullable;
+
+import com.android.documentsui.roots.RootCursorWrapper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-memory, column oriented copy of a directory cursor. The source cursor is read once, row by
+ * row, when the snapshot is taken. Afterwards every read is an array access, so the filtering,
+ * sorting and binding layers above it no longer refill a (possibly cross-process) CursorWindow on
+ * random access.
+ *
+ * <p>Well known {@link Document} columns are stored as primitives: size and last modified as
+ * {@code long[]}, flags, icon and user ID as {@code int[]}. MIME types, authorities and root IDs
+ * repeat on almost every row, so they are interned per snapshot. Any other column is kept as
+ * the boxed value the source cursor reported for it.
+ *
+ * <p>The source cursor is kept open so content observers and extras keep working. Closing the
+ * snapshot closes it. A copy made by {@link #detach} keeps the rows without the source cursor.
+ */
+public class SnapshotCursor extends AbstractCursor {
+
+    // The source cursor, or the detached snapshot this one shares, or null if this one is
+    // detached, see detach().
+    private final @Nullable Cursor mCursor;
+    private final String[] mColumnNames;
+    private final int mCount;
+    private final Column[] mColumns;
+    // Whether closing this cursor closes mCursor, see share().
+    private final boolean mOwnsCursor;
+
+    private SnapshotCursor(Cursor cursor) {
+        mCursor = cursor;
+        mOwnsCursor = true;
+        mColumnNames = cursor.getColumnNames();
+        mCount = cursor.getCount();
+        mColumns = new Column[mColumnNames.length];
+
+        final Map<String, String> internPool = new HashMap<>();
+        for (int i = 0; i < mColumnNames.length; i++) {
+            mColumns[i] = createColumn(mColumnNames[i], mCount, internPool);
+        }
+
+        cursor.moveToPosition(-1);
+        for (int row = 0; row < mCount; row++) {
+            if (!cursor.moveToNext()) {
+                throw new IllegalStateException("Failed to move source cursor to row " + row);
+            }
+            for (int i = 0; i < mColumns.length; i++) {
+                mColumns[i].read(cursor, i, row);
+            }
+        }
+    }
+
+    /**
+     * Copies every row of the given cursor into memory. Must not be called on the UI thread.
+     * The returned cursor takes ownership of {@code cursor}; it is closed if the copy fails.
+     */
+    public static SnapshotCursor copyOf(Cursor cursor) {
+        try {
+            return new SnapshotCursor(cursor);
+        } catch (RuntimeException e) {
+            cursor.close();
+            throw e;
+        }
+    }
+
+    private SnapshotCursor(SnapshotCursor snapshot) {
+        mCursor = snapshot.mCursor != null ? snapshot.mCursor : snapshot;
+        mOwnsCursor = false;
+        mColumnNames = snapshot.mColumnNames;
+        mCount = snapshot.mCount;
+        mColumns = snapshot.mColumns;
+    }
+
+    /**
+     * Returns a cursor over the rows of this snapshot, with a position of its own, so that it
+     * can be read on another thread while this one is. Closing it leaves the source cursor open.
+     */
+    public SnapshotCursor share() {
+        return new SnapshotCursor(this);
+    }
+
+    private SnapshotCursor(SnapshotCursor snapshot, ContentResolver resolver) {
+        mCursor = null;
+        mOwnsCursor = false;
+        mColumnNames = snapshot.mColumnNames;
+        mCount = snapshot.mCount;
+        mColumns = snapshot.mColumns;
+        setExtras(snapshot.getExtras());
+        final Uri notificationUri = snapshot.getNotificationUri();
+        if (notificationUri != null) {
+            setNotificationUri(resolver, notificationUri);
+        }
+    }
+
+    /**
+     * Returns a cursor over the rows of this snapshot that doesn't hold the source cursor, so
+     * that the rows can be kept without keeping the provider's cursor open. It has a copy of the
+     * extras, and {@code resolver} tells its content observers of changes. The rows are not
+     * copied again. It has to be closed, independently of this snapshot.
+     */
+    public SnapshotCursor detach(ContentResolver resolver) {
+        return new SnapshotCursor(this, resolver);
+    }
+
+    private static Column createColumn(
+            String name, int count, Map<String, String> internPool) {
+        switch (name) {
+            case Document.COLUMN_SIZE:
+            case Document.COLUMN_LAST_MODIFIED:
+                return new LongColumn(count);
+            case Document.COLUMN_FLAGS:
+            case Document.COLUMN_ICON:
+                return new IntColumn(count, true);
+            case RootCursorWrapper.COLUMN_USER_ID:
+                // RootCursorWrapper computes this column and can't answer isNull() for it.
+                return new IntColumn(count, false);
+            case Document.COLUMN_MIME_TYPE:
+            case RootCursorWrapper.COLUMN_AUTHORITY:
+            case RootCursorWrapper.COLUMN_ROOT_ID:
+                return new StringColumn(count, internPool);
+            case Document.COLUMN_DOCUMENT_ID:
+            case Document.COLUMN_DISPLAY_NAME:
+            case Document.COLUMN_SUMMARY:
+                return new StringColumn(count, null);
+            default:
+                return new ObjectColumn(count);
+        }
+    }
+
+    @Override
+    public Bundle getExtras() {
+        return mCursor != null ? mCursor.getExtras() : super.getExtras();
+    }
+
+    @Override
+    public Uri getNotificationUri() {
+        return mCursor != null ? mCursor.getNotificationUri() : super.getNotificationUri();
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        if (mOwnsCursor) {
+            mCursor.close();
+        }
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mColumnNames;
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public String getString(int column) {
+        return mColumns[column].getString(mPos);
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) mColumns[column].getLong(mPos);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) mColumns[column].getLong(mPos);
+    }
+
+    @Override
+    public long getLong(int column) {
+        return mColumns[column].getLong(mPos);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return (float) mColumns[column].getDouble(mPos);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return mColumns[column].getDouble(mPos);
+    }
+
+    @Override
+    public byte[] getBlob(int column) {
+        return mColumns[column].getBlob(mPos);
+    }
+
+    @Override
+    public int getType(int column) {
+        return mColumns[column].getType(mPos);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return mColumns[column].getType(mPos) == FIELD_TYPE_NULL;
+    }
+
+    @Override
+    public void registerContentObserver(ContentObserver observer) {
+        if (mCursor != null) {
+            mCursor.registerContentObserver(observer);
+        } else {
+            super.registerContentObserver(observer);
+        }
+    }
+
+    @Override
+    public void unregisterContentObserver(ContentObserver observer) {
+        if (mCursor != null) {
+            mCursor.unregisterContentObserver(observer);
+        } else {
+            super.unregisterContentObserver(observer);
+        }
+    }
+
+    /**
+     * Storage for one column. Getters follow the conversions of
+     * {@link android.database.CursorWindow}, which backs provider cursors: text reads as its
+     * UTF-8 bytes, and as 0 where a number is asked for but it doesn't hold one.
+     */
+    private abstract static class Column {
+        abstract void read(Cursor cursor, int column, int row);
+        abstract int getType(int row);
+        abstract String getString(int row);
+        abstract long getLong(int row);
+
+        double getDouble(int row) {
+            return getLong(row);
+        }
+
+        byte[] getBlob(int row) {
+            final String value = getString(row);
+            return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return (long) parseDouble(value);
+        }
+    }
+
+    private static double parseDouble(String value) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static final class LongColumn extends Column {
+        private final long[] mValues;
+        private final boolean[] mNulls;
+
+        LongColumn(int count) {
+            mValues = new long[count];
+            mNulls = new boolean[count];
+        }
+
+        @Override
+        void read(Cursor cursor, int column, int row) {
+            if (cursor.isNull(column)) {
+                mNulls[row] = true;
+            } else {
+                mValues[row] = cursor.getLong(column);
+            }
+        }
+
+        @Override
+        int getType(int row) {
+            return mNulls[row] ? FIELD_TYPE_NULL : FIELD_TYPE_INTEGER;
+        }
+
+        @Override
+        String getString(int row) {
+            return mNulls[row] ? null : Long.toString(mValues[row]);
+        }
+
+        @Override
+        long getLong(int row) {
+            return mValues[row];
+        }
+    }
+
+    private static final class IntColumn extends Column {
+        private final int[] mValues;
+        private final boolean[] mNulls;
+
+        IntColumn(int count, boolean nullable) {
+            mValues = new int[count];
+            mNulls = nullable ? new boolean[count] : null;
+        }
+
+        @Override
+        void read(Cursor cursor, int column, int row) {
+            if (mNulls != null && cursor.isNull(column)) {
+                mNulls[row] = true;
+            } else {
+                mValues[row] = cursor.getInt(column);
+            }
+        }
+
+        @Override
+        int getType(int row) {
+            return mNulls != null && mNulls[row] ? FIELD_TYPE_NULL : FIELD_TYPE_INTEGER;
+        }
+
+        @Override
+        String getString(int row) {
+            return mNulls != null && mNulls[row] ? null : Integer.toString(mValues[row]);
+        }
+
+        @Override
+        long getLong(int row) {
+            return mValues[row];
+        }
+    }
+
+    private static final class StringColumn extends Column {
+        private final String[] mValues;
+        private final Map<String, String> mInternPool;
+
+        StringColumn(int count, Map<String, String> internPool) {
+            mValues = new String[count];
+            mInternPool = internPool;
+        }
+
+        @Override
+        void read(Cursor cursor, int column, int row) {
+            final String value = cursor.getString(column);
+            if (value != null && mInternPool != null) {
+                final String interned = mInternPool.putIfAbsent(value, value);
+                mValues[row] = interned != null ? interned : value;
+            } else {
+                mValues[row] = value;
+            }
+        }
+
+        @Override
+        int getType(int row) {
+            return mValues[row] == null ? FIELD_TYPE_NULL : FIELD_TYPE_STRING;
+        }
+
+        @Override
+        String getString(int row) {
+            return mValues[row];
+        }
+
+        @Override
+        long getLong(int row) {
+            final String value = mValues[row];
+            return value == null ? 0 : parseLong(value);
+        }
+
+        @Override
+        double getDouble(int row) {
+            final String value = mValues[row];
+            return value == null ? 0 : parseDouble(value);
+        }
+    }
+
+    private static final class ObjectColumn extends Column {
+        private final Object[] mValues;
+
+        ObjectColumn(int count) {
+            mValues = new Object[count];
+        }
+
+        @Override
+        void read(Cursor cursor, int column, int row) {
+            switch (cursor.getType(column)) {
+                case FIELD_TYPE_INTEGER:
+                    mValues[row] = cursor.getLong(column);
+                    break;
+                case FIELD_TYPE_FLOAT:
+                    mValues[row] = cursor.getDouble(column);
+                    break;
+                case FIELD_TYPE_BLOB:
+                    mValues[row] = cursor.getBlob(column);
+                    break;
+                case FIELD_TYPE_STRING:
+                    mValues[row] = cursor.getString(column);
+                    break;
+                case FIELD_TYPE_NULL:
+                default:
+                    mValues[row] = null;
+                    break;
+            }
+        }
+
+        @Override
+        int getType(int row) {
+            final Object value = mValues[row];
+            if (value == null) {
+                return FIELD_TYPE_NULL;
+            } else if (value instanceof Long) {
+                return FIELD_TYPE_INTEGER;
+            } else if (value instanceof Double) {
+                return FIELD_TYPE_FLOAT;
+            } else if (value instanceof byte[]) {
+                return FIELD_TYPE_BLOB;
+            }
+            return FIELD_TYPE_STRING;
+        }
+
+        @Override
+        String getString(int row) {
+            final Object value = mValues[row];
+            return value == null ? null : value.toString();
+        }
+
+        @Override
+        long getLong(int row) {
+            final Object value = mValues[row];
+            if (value == null) {
+                return 0;
+            } else if (value instanceof Number) {
+                return ((Number) value).longValue();
+            }
+            return parseLong(value.toString());
+        }
+
+        @Override
+        double getDouble(int row) {
+            final Object value = mValues[row];
+            if (value == null) {
+                return 0;
+            } else if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            }
+            return parseDouble(value.toString());
+        }
+
+        @Override
+        byte[] getBlob(int row) {
+            final Object value = mValues[row];
+            return (value == null || value instanceof byte[])
+                    ? (byte[]) value
+                    : value.toString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -20,7 +20,9 @@ import android.os.UserManager;
 import android.view.ViewGroup;
 
 import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.GridLayoutManager;
+import androidx.recyclerview.widget.ListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView.AdapterDataObserver;
 
 import com.android.documentsui.ConfigStore;
@@ -48,6 +50,8 @@ final class DirectoryAddonsAdapter extends DocumentsAdapter {
     private final EventListener<Update> mModelUpdateListener;
 
     private int mBreakPosition = -1;
+    // Changes made by the last model update, if they can be applied as granular item events.
+    private @Nullable DiffUtil.DiffResult mPendingDiff;
     // TODO: There should be two header messages (or more here). Defaulting to showing only one for
     // now.
     private final Message mHeaderMessage;
@@ -199,7 +203,11 @@ final class DirectoryAddonsAdapter extends DocumentsAdapter {
         // in our update handler.
         mDelegate.getModelUpdateListener().accept(event);
 
+        final boolean headerShown = mHeaderMessage.shouldShow();
+        final boolean inflateShown = mInflateMessage.shouldShow();
+
         mBreakPosition = -1;
+        mPendingDiff = null;
         mInflateMessage.update(event);
         mHeaderMessage.update(event);
         // If there's any fatal error (exceptions), then no need to update the rest.
@@ -223,6 +231,54 @@ final class DirectoryAddonsAdapter extends DocumentsAdapter {
                 break;
             }
         }
+
+        // The diff covers the documents and the section break. Messages appearing or
+        // disappearing would shift every position, so just refresh everything then.
+        if (headerShown == mHeaderMessage.shouldShow()
+                && inflateShown == mInflateMessage.shouldShow()) {
+            mPendingDiff = model.getUpdateDiff();
+        }
+    }
+
+    @Override
+    void notifyModelUpdated() {
+        final DiffUtil.DiffResult diff = mPendingDiff;
+        mPendingDiff = null;
+        if (diff == null) {
+            notifyDataSetChanged();
+            return;
+        }
+
+        final int topOffset = mHeaderMessage.shouldShow() ? 1 : 0;
+        diff.dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                notifyItemRangeInserted(position + topOffset, count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                notifyItemRangeRemoved(position + topOffset, count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                notifyItemMoved(fromPosition + topOffset, toPosition + topOffset);
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                notifyItemRangeChanged(position + topOffset, count, payload);
+            }
+        });
+
+        // The messages may show new text.
+        if (mHeaderMessage.shouldShow()) {
+            notifyItemChanged(0);
+        }
+        if (mInflateMessage.shouldShow()) {
+            notifyItemChanged(getItemCount() - 1);
+        }
     }
 
     @Override
@@ -274,6 +330,11 @@ final class DirectoryAddonsAdapter extends DocumentsAdapter {
         return mDelegate.getStableIds();
     }
 
+    @Override
+    boolean hasStableId(String id) {
+        return mDelegate.hasStableId(id);
+    }
+
     @Override
     public int getAdapterPosition(String modelId) {
         return toViewPosition(mDelegate.getAdapterPosition(modelId));
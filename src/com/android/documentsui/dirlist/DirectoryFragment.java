@@ -146,6 +146,10 @@ public class DirectoryFragment extends Fragment implements SwipeRefreshLayout.On
     private static final int REFRESH_SPINNER_TIMEOUT = 500;
     private static final int PROVIDER_MAX_RETRIES = 10;
     private static final long PROVIDER_TEST_DELAY = 4000;
+    // How close to the end of a paged listing scrolling loads its next page, in items.
+    private static final int NEXT_PAGE_DISTANCE = 50;
+    // Scroll speed above which a fling pauses thumbnail loads, in dp per frame.
+    private static final int FLING_PAUSE_DP_PER_FRAME = 60;
     private static final String ACTION_MEDIA_REMOVED = "android.intent.action.MEDIA_REMOVED";
     private static final String ACTION_MEDIA_MOUNTED = "android.intent.action.MEDIA_MOUNTED";
     private static final String ACTION_MEDIA_EJECT = "android.intent.action.MEDIA_EJECT";
@@ -217,12 +221,42 @@ public class DirectoryFragment extends Fragment implements SwipeRefreshLayout.On
     private SortModel.UpdateListener mSortListener = (model, updateType) -> {
         // Only when sort order has changed do we need to trigger another loading.
         if ((updateType & SortModel.UPDATE_TYPE_SORTING) != 0) {
-            mActions.loadDocumentsForCurrentStack();
+            mActions.sortDocumentsForCurrentStack();
         }
     };
 
     private final Runnable mOnDisplayStateChanged = this::onDisplayStateChanged;
 
+    private final RecyclerView.OnScrollListener mPagingScrollListener =
+            new RecyclerView.OnScrollListener() {
+                @Override
+                public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                    if (dy > 0) {
+                        loadNextPageIfNearEnd();
+                    }
+                }
+            };
+
+    // Thumbnails are loaded only once a fling slows down to the rows the user may stop on.
+    private final RecyclerView.OnScrollListener mThumbnailScrollListener =
+            new RecyclerView.OnScrollListener() {
+                @Override
+                public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                    if (newState != RecyclerView.SCROLL_STATE_SETTLING) {
+                        mIconHelper.setThumbnailLoadsPaused(false);
+                    }
+                }
+
+                @Override
+                public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                    mIconHelper.setThumbnailLoadsPaused(
+                            recyclerView.getScrollState() == RecyclerView.SCROLL_STATE_SETTLING
+                                    && Math.abs(dy) > mFlingPauseDistance);
+                }
+            };
+    // Pixels scrolled in a frame above which thumbnail loads are paused.
+    private int mFlingPauseDistance;
+
     private final ViewTreeObserver.OnPreDrawListener mToolbarPreDrawListener = () -> {
         final boolean appBarHeightChanged = mAppBarHeight != getAppBarLayoutHeight();
         if (appBarHeightChanged || mSaveLayoutHeight != getSaveLayoutHeight()) {
@@ -488,6 +522,7 @@ public class DirectoryFragment extends Fragment implements SwipeRefreshLayout.On
             final View view = mRecView.getChildAt(i);
             cancelThumbnailTask(view);
         }
+        mIconHelper.cancelPendingLoads();
 
         mModel.removeUpdateListener(mModelUpdateListener);
         mModel.removeUpdateListener(mAdapter.getModelUpdateListener());
@@ -533,6 +568,10 @@ public class DirectoryFragment extends Fragment implements SwipeRefreshLayout.On
             mLayout.setSpanSizeLookup(lookup);
         }
         mRecView.setLayoutManager(mLayout);
+        mRecView.addOnScrollListener(mPagingScrollListener);
+        mFlingPauseDistance = (int) (FLING_PAUSE_DP_PER_FRAME
+                * getResources().getDisplayMetrics().density);
+        mRecView.addOnScrollListener(mThumbnailScrollListener);
 
         mModel.addUpdateListener(mAdapter.getModelUpdateListener());
         mModel.addUpdateListener(mModelUpdateListener);
@@ -1447,12 +1486,12 @@ public class DirectoryFragment extends Fragment implements SwipeRefreshLayout.On
             // Update the selection to remove any disappeared IDs.
             Iterator<String> selectionIter = mSelectionMgr.getSelection().iterator();
             while (selectionIter.hasNext()) {
-                if (!mAdapter.getStableIds().contains(selectionIter.next())) {
+                if (!mAdapter.hasStableId(selectionIter.next())) {
                     selectionIter.remove();
                 }
             }
 
-            mAdapter.notifyDataSetChanged();
+            mAdapter.notifyModelUpdated();
 
             if (mRestoredState != null) {
                 mSelectionMgr.onRestoreInstanceState(mRestoredState);
@@ -1487,6 +1526,11 @@ public class DirectoryFragment extends Fragment implements SwipeRefreshLayout.On
                         REFRESH_SPINNER_TIMEOUT);
             }
 
+            if (mModel.hasMorePages()) {
+                // The loaded rows may not fill the screen, so there may be nothing to scroll.
+                mRecView.post(DirectoryFragment.this::loadNextPageIfNearEnd);
+            }
+
             if (!mModel.isLoading()) {
                 mActivity.notifyDirectoryLoaded(
                         mModel.doc != null ? mModel.doc.derivedUri : null);
@@ -1503,6 +1547,14 @@ public class DirectoryFragment extends Fragment implements SwipeRefreshLayout.On
         }
     }
 
+    private void loadNextPageIfNearEnd() {
+        if (mModel.hasMorePages() && mLayout != null
+                && mLayout.findLastVisibleItemPosition()
+                        >= mAdapter.getItemCount() - NEXT_PAGE_DISTANCE) {
+            mActions.loadNextPageForCurrentStack();
+        }
+    }
+
     private final class AdapterEnvironment implements DocumentsAdapter.Environment {
 
         @Override
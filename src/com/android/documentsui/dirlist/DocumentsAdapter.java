@@ -58,6 +58,19 @@ public abstract class DocumentsAdapter extends RecyclerView.Adapter<DocumentHold
 
     abstract EventListener<Model.Update> getModelUpdateListener();
 
+    /** Returns whether {@code id} is one of {@link #getStableIds()}. */
+    boolean hasStableId(String id) {
+        return getStableIds().contains(id);
+    }
+
+    /**
+     * Notifies observers of the changes made by the last model update. By default the whole
+     * data set is reported as changed.
+     */
+    void notifyModelUpdated() {
+        notifyDataSetChanged();
+    }
+
     /**
      * Returns a class that yields the span size for a particular element. This is
      * primarily useful in {@link DirectoryAddonsAdapter} where
@@ -26,6 +26,8 @@ import android.graphics.Bitmap;
 import android.graphics.Point;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
 import android.provider.DocumentsContract;
 import android.provider.DocumentsContract.Document;
 import android.util.Log;
@@ -50,6 +52,8 @@ import com.android.documentsui.base.State;
 import com.android.documentsui.base.State.ViewMode;
 import com.android.documentsui.base.UserId;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.function.BiConsumer;
 
 /**
@@ -72,6 +76,13 @@ public class IconHelper {
     private final UserManagerState mUserManagerState;
     private final ConfigStore mConfigStore;
 
+    // Thumbnail loads held back while the list flings, by view, in the order they were requested.
+    // Only the latest load of a view is kept, so there are at most as many as views in the list.
+    private final Map<ImageView, Runnable> mPausedLoads = new LinkedHashMap<>();
+    private boolean mLoadsPaused;
+    // Runs the loads of rows bound before they were attached, see loadThumbnail.
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
     /**
      * @param mode MODE_GRID or MODE_LIST
      */
@@ -105,6 +116,33 @@ public class IconHelper {
         mThumbnailsEnabled = enabled;
     }
 
+    /**
+     * Holds back thumbnail loads while paused, e.g. while the list flings past rows the user
+     * won't stop on. Once resumed, the loads still needed are queued, so that the rows the list
+     * stopped on are loaded first. Must be called on the main thread.
+     */
+    public void setThumbnailLoadsPaused(boolean paused) {
+        if (mLoadsPaused == paused) {
+            return;
+        }
+        mLoadsPaused = paused;
+        if (!paused) {
+            for (Runnable load : mPausedLoads.values()) {
+                load.run();
+            }
+            mPausedLoads.clear();
+        }
+    }
+
+    /**
+     * Drops the thumbnail loads not given to an executor yet, e.g. when the list goes away.
+     * Must be called on the main thread.
+     */
+    public void cancelPendingLoads() {
+        mPausedLoads.clear();
+        mHandler.removeCallbacksAndMessages(null);
+    }
+
     /**
      * Sets the current display mode. This affects the thumbnail sizes that are loaded.
      *
@@ -136,6 +174,7 @@ public class IconHelper {
      * Cancels any ongoing load operations associated with the given ImageView.
      */
     public void stopLoading(ImageView icon) {
+        mPausedLoads.remove(icon);
         final ThumbnailLoader oldTask = (ThumbnailLoader) icon.getTag();
         if (oldTask != null) {
             oldTask.preempt();
@@ -181,7 +220,7 @@ public class IconHelper {
 
         final boolean supportsThumbnail = (docFlags & Document.FLAG_SUPPORTS_THUMBNAIL) != 0;
         final boolean allowThumbnail = (mMode == MODE_GRID)
-                || MimeTypes.mimeMatches(MimeTypes.VISUAL_MIMES, mimeType);
+                || MimeTypes.VISUAL_MIMES_MATCHER.matches(mimeType);
         final boolean showThumbnail = supportsThumbnail && allowThumbnail && mThumbnailsEnabled;
         if (showThumbnail) {
             loadedThumbnail =
@@ -231,7 +270,24 @@ public class IconHelper {
                             }
                         }, true /* addToCache */);
 
-                ProviderExecutor.forAuthority(docAuthority).execute(task);
+                final Runnable load = () -> {
+                    // Dropped if the view was recycled meanwhile.
+                    if (!task.isCancelled()) {
+                        ProviderExecutor.forAuthority(docAuthority)
+                                .execute(getThumbnailPriority(iconThumb), task);
+                    }
+                };
+                if (mLoadsPaused) {
+                    mPausedLoads.remove(iconThumb);
+                    mPausedLoads.put(iconThumb, load);
+                } else if (iconThumb.isAttachedToWindow()) {
+                    load.run();
+                } else {
+                    // Rows are bound before they are attached, both when laid out on screen
+                    // and when prefetched ahead of a scroll. Only the former are attached once
+                    // the layout is done.
+                    mHandler.post(load);
+                }
             }
 
             return result.isHit();
@@ -240,6 +296,12 @@ public class IconHelper {
         }
     }
 
+    private static @ProviderExecutor.Priority int getThumbnailPriority(ImageView iconThumb) {
+        return iconThumb.isAttachedToWindow()
+                ? ProviderExecutor.PRIORITY_VISIBLE_THUMBNAIL
+                : ProviderExecutor.PRIORITY_OFFSCREEN_THUMBNAIL;
+    }
+
     private void setMimeIcon(ImageView view, Drawable icon) {
         view.setImageDrawable(icon);
         view.setAlpha(1f);
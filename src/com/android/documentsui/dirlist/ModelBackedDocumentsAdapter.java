@@ -37,8 +37,10 @@ import com.android.documentsui.base.Lookup;
 import com.android.documentsui.base.State;
 import com.android.documentsui.roots.RootCursorWrapper;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Adapts from dirlist.Model to something RecyclerView understands.
@@ -58,7 +60,9 @@ final class ModelBackedDocumentsAdapter extends DocumentsAdapter {
      * An ordered list of model IDs. This is the data structure that determines what shows up in
      * the UI, and where.
      */
-    private List<String> mModelIds = new ArrayList<>();
+    private List<String> mModelIds = Collections.emptyList();
+    // Maps model IDs to their positions in mModelIds. Taken from the model with mModelIds.
+    private Map<String, Integer> mPositions = Collections.emptyMap();
     private EventListener<Model.Update> mModelUpdateListener;
 
     public ModelBackedDocumentsAdapter(
@@ -164,16 +168,15 @@ final class ModelBackedDocumentsAdapter extends DocumentsAdapter {
     }
 
     private void onModelUpdate(Model model) {
-        String[] modelIds = model.getModelIds();
-        mModelIds = new ArrayList<>(modelIds.length);
-        for (String id : modelIds) {
-            mModelIds.add(id);
-        }
+        // The model replaces rather than changes its ids and positions, so they can be shared.
+        mModelIds = Collections.unmodifiableList(Arrays.asList(model.getModelIds()));
+        mPositions = model.getPositions();
     }
 
     private void onModelUpdateFailed(Exception e) {
         Log.w(TAG, "Model update failed.", e);
-        mModelIds.clear();
+        mModelIds = Collections.emptyList();
+        mPositions = Collections.emptyMap();
     }
 
     @Override
@@ -183,7 +186,8 @@ final class ModelBackedDocumentsAdapter extends DocumentsAdapter {
 
     @Override
     public int getAdapterPosition(String modelId) {
-        return mModelIds.indexOf(modelId);
+        final Integer position = mPositions.get(modelId);
+        return position != null ? position : -1;
     }
 
     @Override
@@ -193,8 +197,13 @@ final class ModelBackedDocumentsAdapter extends DocumentsAdapter {
 
     @Override
     public int getPosition(String id) {
-        int position = mModelIds.indexOf(id);
-        return position >= 0 ? position : RecyclerView.NO_POSITION;
+        final Integer position = mPositions.get(id);
+        return position != null ? position : RecyclerView.NO_POSITION;
+    }
+
+    @Override
+    boolean hasStableId(String id) {
+        return mPositions.containsKey(id);
     }
 
     @Override
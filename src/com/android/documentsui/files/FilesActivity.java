@@ -106,6 +106,7 @@ public class FilesActivity extends BaseActivity implements AbstractActionHandler
                 messages,
                 DialogController.create(features, this),
                 DocumentsApplication.getFileTypeLookup(this),
+                DocumentsApplication.getListingCache(this),
                 new ShortcutsUpdater(this)::update);
 
         super.onCreate(icicle);
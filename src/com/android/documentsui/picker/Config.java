@@ -25,6 +25,7 @@ import static com.android.documentsui.base.State.ACTION_PICK_COPY_DESTINATION;
 import android.provider.DocumentsContract.Document;
 
 import com.android.documentsui.ActivityConfig;
+import com.android.documentsui.base.MimeMatcher;
 import com.android.documentsui.base.MimeTypes;
 import com.android.documentsui.base.State;
 
@@ -33,6 +34,10 @@ import com.android.documentsui.base.State;
  */
 final class Config extends ActivityConfig {
 
+    // isDocumentEnabled runs on every bind; recompile only when the accepted types change.
+    private String[] mAcceptMimes;
+    private MimeMatcher mAcceptMatcher;
+
     @Override
     public boolean canSelectType(String docMimeType, int docFlags, State state) {
         if (!isDocumentEnabled(docMimeType, docFlags, state)) {
@@ -76,6 +81,14 @@ final class Config extends ActivityConfig {
                 }
         }
 
-        return MimeTypes.mimeMatches(state.acceptMimes, mimeType);
+        return getAcceptMatcher(state).matches(mimeType);
+    }
+
+    private MimeMatcher getAcceptMatcher(State state) {
+        if (mAcceptMatcher == null || mAcceptMimes != state.acceptMimes) {
+            mAcceptMimes = state.acceptMimes;
+            mAcceptMatcher = MimeMatcher.compile(state.acceptMimes);
+        }
+        return mAcceptMatcher;
     }
 }
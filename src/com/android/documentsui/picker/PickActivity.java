@@ -106,6 +106,7 @@ public class PickActivity extends BaseActivity implements ActionHandler.Addons {
                 new MessageBuilder(this),
                 DialogController.create(features, this),
                 DocumentsApplication.getFileTypeLookup(this),
+                DocumentsApplication.getListingCache(this),
                 (Collection<RootInfo> roots) -> {
                 });
 
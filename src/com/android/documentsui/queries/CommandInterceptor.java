@@ -23,6 +23,8 @@ import android.text.TextUtils;
 import android.util.Log;
 
 import com.android.documentsui.DocumentsApplication;
+import com.android.documentsui.ExecutorStats;
+import com.android.documentsui.ProviderExecutor;
 import com.android.documentsui.R;
 import com.android.documentsui.base.DebugFlags;
 import com.android.documentsui.base.EventHandler;
@@ -50,6 +52,9 @@ public final class CommandInterceptor implements EventHandler<String> {
         mCommands.add(this::jobProgressDialog);
         mCommands.add(this::docDetails);
         mCommands.add(this::forcePaging);
+        mCommands.add(this::directorySnapshot);
+        mCommands.add(this::directoryPrefetch);
+        mCommands.add(this::executorStats);
     }
 
     public void add(EventHandler<String[]> handler) {
@@ -124,6 +129,51 @@ public final class CommandInterceptor implements EventHandler<String> {
         return false;
     }
 
+    private boolean directorySnapshot(String[] tokens) {
+        if ("snapshot".equals(tokens[0])) {
+            if (tokens.length == 2 && !TextUtils.isEmpty(tokens[1])) {
+                boolean enabled = asBool(tokens[1]);
+                mFeatures.forceFeature(R.bool.feature_directory_snapshot, enabled);
+                Log.i(TAG, "Set directory snapshot enabled to: " + enabled);
+                return true;
+            }
+            Log.w(TAG, "Invalid command structure: " + TextUtils.join(" ", tokens));
+        }
+        return false;
+    }
+
+    private boolean directoryPrefetch(String[] tokens) {
+        if ("prefetch".equals(tokens[0])) {
+            if (tokens.length == 2 && !TextUtils.isEmpty(tokens[1])) {
+                boolean enabled = asBool(tokens[1]);
+                mFeatures.forceFeature(R.bool.feature_directory_prefetch, enabled);
+                Log.i(TAG, "Set directory prefetch enabled to: " + enabled);
+                return true;
+            }
+            Log.w(TAG, "Invalid command structure: " + TextUtils.join(" ", tokens));
+        }
+        return false;
+    }
+
+    // Logs where the time of loads goes, see ExecutorStats.
+    private boolean executorStats(String[] tokens) {
+        if ("executors".equals(tokens[0])) {
+            if (tokens.length == 1) {
+                for (String line : ExecutorStats.dump()) {
+                    Log.i(TAG, line);
+                }
+                Log.i(TAG, "Queued or running tasks: " + ProviderExecutor.getQueueDepths());
+                return true;
+            } else if (tokens.length == 2 && "reset".equals(tokens[1])) {
+                ExecutorStats.reset();
+                Log.i(TAG, "Reset executor stats");
+                return true;
+            }
+            Log.w(TAG, "Invalid command structure: " + TextUtils.join(" ", tokens));
+        }
+        return false;
+    }
+
     // Include document debug info in Get Info panel.
     // enabled by default on DEBUG builds.
     private boolean docDetails(String[] tokens) {
@@ -185,6 +235,7 @@ public final class CommandInterceptor implements EventHandler<String> {
         public boolean accept(String[] tokens) {
             if ("dumpCache".equals(tokens[0])) {
                 DocumentsApplication.getProvidersCache(mContext).logCache();
+                Log.i(TAG, "File types: " + DocumentsApplication.getFileTypeLookup(mContext));
                 return true;
             }
             return false;
@@ -19,6 +19,7 @@ package com.android.documentsui.roots;
 import android.database.AbstractCursor;
 import android.database.ContentObserver;
 import android.database.Cursor;
+import android.net.Uri;
 import android.os.Bundle;
 import android.util.Log;
 
@@ -172,4 +173,9 @@ public class RootCursorWrapper extends AbstractCursor {
     public void unregisterContentObserver(ContentObserver observer) {
         mCursor.unregisterContentObserver(observer);
     }
+
+    @Override
+    public Uri getNotificationUri() {
+        return mCursor.getNotificationUri();
+    }
 }
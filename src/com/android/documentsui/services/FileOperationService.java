@@ -33,6 +33,7 @@ import android.util.Log;
 import androidx.annotation.IntDef;
 import androidx.annotation.VisibleForTesting;
 
+import com.android.documentsui.ExecutorStats;
 import com.android.documentsui.R;
 import com.android.documentsui.base.Features;
 
@@ -254,7 +255,8 @@ public class FileOperationService extends Service implements Job.Listener {
             if (DEBUG) {
                 Log.d(TAG, "Scheduling job " + job.id + ".");
             }
-            Future<?> future = getExecutorService(operation.getOpType()).submit(job);
+            Future<?> future = ExecutorStats.submit(getExecutorService(operation.getOpType()),
+                    TAG, job.getClass().getSimpleName(), job);
             mJobs.put(jobId, new JobRecord(job, future));
 
             // Acquire wake lock to keep CPU running until we finish all jobs. Acquire wake lock
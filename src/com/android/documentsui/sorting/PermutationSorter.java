@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.sorting;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Stable O(n log n) merge sort over a permutation of row indices. Rows are never moved; only
+ * the int positions are, and the comparator looks the keys up in whatever primitive columns the
+ * caller extracted from the cursor.
+ *
+ * <p>This class has no Android dependencies so it can be benchmarked on the host.
+ */
+final class PermutationSorter {
+
+    /**
+     * Ranges at or below this size are insertion sorted. Same cut-off the JDK uses for its
+     * legacy merge sort.
+     */
+    private static final int INSERTION_SORT_THRESHOLD = 7;
+
+    /**
+     * Ranges at or below this size are sorted sequentially by a single fork/join task.
+     */
+    private static final int PARALLEL_GRANULARITY = 8192;
+
+    /**
+     * Compares two rows by their original index.
+     */
+    @FunctionalInterface
+    interface IndexComparator {
+        int compare(int lhs, int rhs);
+    }
+
+    private PermutationSorter() {}
+
+    /**
+     * Sorts {@code positions} in place. Equal rows keep their relative order.
+     */
+    static void sort(int[] positions, IndexComparator comparator) {
+        sort(positions, 0, positions.length, comparator);
+    }
+
+    /**
+     * Sorts {@code positions[from, to)} in place. Equal rows keep their relative order.
+     */
+    static void sort(int[] positions, int from, int to, IndexComparator comparator) {
+        if (to - from < 2) {
+            return;
+        }
+        final int[] buffer = new int[positions.length];
+        System.arraycopy(positions, from, buffer, from, to - from);
+        mergeSort(buffer, positions, from, to, comparator);
+    }
+
+    /**
+     * Sorts {@code positions} in place, splitting the work across {@code pool}. The result is
+     * identical to {@link #sort(int[], IndexComparator)}: a stable sort has exactly one possible
+     * output. The comparator is called concurrently, so it must only read its key columns.
+     */
+    static void parallelSort(int[] positions, IndexComparator comparator, ForkJoinPool pool) {
+        if (positions.length <= PARALLEL_GRANULARITY || pool.getParallelism() < 2) {
+            sort(positions, comparator);
+            return;
+        }
+        final int[] buffer = positions.clone();
+        pool.invoke(new SortTask(buffer, positions, 0, positions.length, comparator));
+    }
+
+    /**
+     * Parallel counterpart of {@link #mergeSort}, with the same contract.
+     */
+    private static final class SortTask extends RecursiveAction {
+        private final int[] mSrc;
+        private final int[] mDest;
+        private final int mLow;
+        private final int mHigh;
+        private final IndexComparator mComparator;
+
+        SortTask(int[] src, int[] dest, int low, int high, IndexComparator comparator) {
+            mSrc = src;
+            mDest = dest;
+            mLow = low;
+            mHigh = high;
+            mComparator = comparator;
+        }
+
+        @Override
+        protected void compute() {
+            if (mHigh - mLow <= PARALLEL_GRANULARITY) {
+                mergeSort(mSrc, mDest, mLow, mHigh, mComparator);
+                return;
+            }
+
+            final int mid = (mLow + mHigh) >>> 1;
+            invokeAll(
+                    new SortTask(mDest, mSrc, mLow, mid, mComparator),
+                    new SortTask(mDest, mSrc, mid, mHigh, mComparator));
+            merge(mSrc, mDest, mLow, mid, mHigh, mComparator);
+        }
+    }
+
+    /**
+     * Sorts {@code src[low, high)} into {@code dest[low, high)}. Both arrays must hold the same
+     * values in that range on entry; {@code src} is used as scratch space.
+     */
+    private static void mergeSort(
+            int[] src, int[] dest, int low, int high, IndexComparator comparator) {
+        final int length = high - low;
+
+        if (length <= INSERTION_SORT_THRESHOLD) {
+            for (int i = low + 1; i < high; i++) {
+                final int pivot = dest[i];
+                int j = i;
+                while (j > low && comparator.compare(dest[j - 1], pivot) > 0) {
+                    dest[j] = dest[j - 1];
+                    j--;
+                }
+                dest[j] = pivot;
+            }
+            return;
+        }
+
+        final int mid = (low + high) >>> 1;
+        mergeSort(dest, src, low, mid, comparator);
+        mergeSort(dest, src, mid, high, comparator);
+
+        merge(src, dest, low, mid, high, comparator);
+    }
+
+    /**
+     * Merges the sorted runs {@code src[low, mid)} and {@code src[mid, high)} into
+     * {@code dest[low, high)}. Ties are taken from the left run, which keeps the merge stable.
+     */
+    static void merge(
+            int[] src, int[] dest, int low, int mid, int high, IndexComparator comparator) {
+        // Already in order (common for provider-sorted or mostly sorted input): just copy.
+        if (mid == low || mid == high || comparator.compare(src[mid - 1], src[mid]) <= 0) {
+            System.arraycopy(src, low, dest, low, high - low);
+            return;
+        }
+
+        int p = low;
+        int q = mid;
+        for (int i = low; i < high; i++) {
+            if (q >= high || (p < mid && comparator.compare(src[p], src[q]) <= 0)) {
+                dest[i] = src[p++];
+            } else {
+                dest[i] = src[q++];
+            }
+        }
+    }
+}
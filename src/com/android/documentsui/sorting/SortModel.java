@@ -34,6 +34,7 @@ import androidx.annotation.VisibleForTesting;
 
 import com.android.documentsui.R;
 import com.android.documentsui.base.Lookup;
+import com.android.documentsui.base.SnapshotCursor;
 import com.android.documentsui.sorting.SortDimension.SortDirection;
 
 import java.lang.annotation.Retention;
@@ -80,6 +81,12 @@ public class SortModel implements Parcelable {
      */
     public static final int UPDATE_TYPE_UNSPECIFIED = -1;
 
+    /**
+     * Row count at which {@link #sortCursor} sorts on all cores instead of only the calling
+     * thread. Below it forking costs more than it saves. The order is the same either way.
+     */
+    private static final int PARALLEL_SORT_THRESHOLD = 50_000;
+
     private static final String TAG = "SortModel";
 
     private final SparseArray<SortDimension> mDimensions;
@@ -219,12 +226,144 @@ public class SortModel implements Parcelable {
 
     public Cursor sortCursor(Cursor cursor, Lookup<String, String> fileTypesMap) {
         if (mSortedDimension != null) {
-            return new SortingCursorWrapper(cursor, mSortedDimension, fileTypesMap);
+            return new SortingCursorWrapper(
+                    cursor, mSortedDimension, fileTypesMap, PARALLEL_SORT_THRESHOLD);
         } else {
             return cursor;
         }
     }
 
+    /**
+     * Sorts the rows of a cursor returned by {@link #sortCursor} again in the current order,
+     * without reading them from the wrapped cursor again. Switching back and forth between
+     * orders only sorts each one once.
+     *
+     * @return the re-sorted cursor, which shares the wrapped cursor with {@code cursor}, or null
+     *         if {@code cursor} cannot be re-sorted in memory and has to be loaded again
+     */
+    public @Nullable Cursor resortCursor(Cursor cursor, Lookup<String, String> fileTypesMap) {
+        if (mSortedDimension == null || !(cursor instanceof SortingCursorWrapper)) {
+            return null;
+        }
+        return SortingCursorWrapper.resort((SortingCursorWrapper) cursor, mSortedDimension,
+                fileTypesMap, PARALLEL_SORT_THRESHOLD);
+    }
+
+    /**
+     * Returns a cursor over the rows of a cursor returned by {@link #sortCursor}, in the same
+     * order, that can be closed independently of it, e.g. to keep the rows after the listing
+     * they were loaded for is gone.
+     *
+     * @return the new cursor, or null if {@code cursor} wasn't sorted by this model or was
+     *         closed
+     */
+    public static @Nullable Cursor shareSortedCursor(Cursor cursor) {
+        if (!(cursor instanceof SortingCursorWrapper)) {
+            return null;
+        }
+        return SortingCursorWrapper.share((SortingCursorWrapper) cursor);
+    }
+
+    /**
+     * Same as {@link #shareSortedCursor}, but the returned cursor holds an in-memory copy of the
+     * rows instead of the cursor they were read from, so that keeping it doesn't keep the
+     * provider's cursor open. {@code resolver} tells it of changes to the rows.
+     *
+     * @return the new cursor, or null if {@code cursor} wasn't sorted by this model, or the rows
+     *         it sorted are not a {@link SnapshotCursor}
+     */
+    public static @Nullable Cursor detachSortedCursor(Cursor cursor, ContentResolver resolver) {
+        if (!(cursor instanceof SortingCursorWrapper)) {
+            return null;
+        }
+        return SortingCursorWrapper.detach((SortingCursorWrapper) cursor, resolver);
+    }
+
+    /**
+     * Returns a cursor over the rows of {@code cursor}, in the same order, with a position of
+     * its own, so that it can be read on another thread while {@code cursor} is, e.g. by the UI
+     * while the next result is loaded. It doesn't keep the rows open, so it needn't be closed.
+     *
+     * @param cursor a {@link SnapshotCursor}, or a cursor returned by {@link #sortCursor} for one
+     * @return the new cursor, or null if {@code cursor} is neither
+     */
+    public static @Nullable Cursor newCursorReader(Cursor cursor) {
+        if (cursor instanceof SnapshotCursor) {
+            return ((SnapshotCursor) cursor).share();
+        }
+        if (cursor instanceof SortingCursorWrapper) {
+            return SortingCursorWrapper.newReader((SortingCursorWrapper) cursor);
+        }
+        return null;
+    }
+
+    /**
+     * Returns, for each position of a cursor returned by {@link #resortCursor}, the position of
+     * the same row in the cursor it was re-sorted from.
+     */
+    public static int[] mapResortedPositions(Cursor from, Cursor resorted) {
+        return SortingCursorWrapper.mapPositions(
+                (SortingCursorWrapper) from, (SortingCursorWrapper) resorted);
+    }
+
+    /**
+     * Sorts {@code cursor} in the current order, given that its first rows are the rows of
+     * {@code previous}, a cursor returned by {@link #sortCursor} or this method, and the others
+     * were appended since, e.g. by a provider that is still loading. Only the appended rows are
+     * read and sorted, and then merged into the order of the others.
+     *
+     * @return the sorted cursor, which does not share any rows with {@code previous}, or null if
+     *         {@code cursor} is not an extension of {@code previous} and has to be sorted in full
+     */
+    public @Nullable Cursor extendSortedCursor(
+            Cursor previous, Cursor cursor, Lookup<String, String> fileTypesMap) {
+        if (mSortedDimension == null || !(previous instanceof SortingCursorWrapper)) {
+            return null;
+        }
+        return SortingCursorWrapper.extend(
+                (SortingCursorWrapper) previous, cursor, mSortedDimension, fileTypesMap);
+    }
+
+    /**
+     * Returns, for each position of a cursor returned by {@link #extendSortedCursor}, the
+     * position of the same row in the cursor it extends, or -1 for the appended rows.
+     */
+    public static int[] mapExtendedPositions(Cursor previous, Cursor extended) {
+        return SortingCursorWrapper.mapExtendedPositions(
+                (SortingCursorWrapper) previous, (SortingCursorWrapper) extended);
+    }
+
+    /**
+     * Same as {@link #sortCursor}, but first checks whether the cursor is already in sort order,
+     * e.g. because the provider honored the args from {@link #addQuerySortArgs}, and if so
+     * returns it as is. The check is linear in the row count, so it is cheaper than sorting
+     * when it passes, and cheap to give up on when it fails early.
+     */
+    public Cursor sortCursorIfUnsorted(Cursor cursor, Lookup<String, String> fileTypesMap) {
+        if (isSorted(cursor, fileTypesMap)) {
+            return cursor;
+        }
+        return sortCursor(cursor, fileTypesMap);
+    }
+
+    /**
+     * Returns whether the rows of {@code cursor} are in the current sort order, directories
+     * first. Linear in the row count, see {@link #sortCursorIfUnsorted}.
+     */
+    public boolean isSorted(Cursor cursor, Lookup<String, String> fileTypesMap) {
+        return mSortedDimension == null
+                || SortingCursorWrapper.isSorted(cursor, mSortedDimension, fileTypesMap);
+    }
+
+    /**
+     * Merges cursors previously returned by {@link #sortCursor} into one cursor in the same sort
+     * order, without sorting their rows again. The returned cursor does not close the given
+     * cursors.
+     */
+    public Cursor mergeSortedCursors(Cursor[] sortedCursors) {
+        return new SortedMergeCursor(sortedCursors);
+    }
+
     public void addQuerySortArgs(Bundle queryArgs) {
         // should only be called when R.bool.feature_content_paging is true
 
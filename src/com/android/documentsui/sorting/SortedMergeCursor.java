@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.sorting;
+
+import android.database.AbstractCursor;
+import android.database.ContentObserver;
+import android.database.Cursor;
+
+/**
+ * Cursor presenting the rows of several individually sorted cursors ("runs") in one sorted
+ * order, like a {@link android.database.MergeCursor} of them passed through
+ * {@link SortingCursorWrapper}, but without sorting the rows again. The order is computed once
+ * by a heap-based k-way merge of the runs, which is O(n log k) for n rows in k runs, and only
+ * reads the sort keys the runs already hold.
+ *
+ * <p>If any run is not a {@link SortingCursorWrapper}, e.g. because no sort dimension was set,
+ * the runs are concatenated, which is what sorting the merged cursor would have done.
+ *
+ * <p>As with {@link android.database.MergeCursor}, all runs are expected to have the same
+ * columns. Unlike it, the runs are not closed with this cursor, so that their owner can merge
+ * them again as more runs arrive.
+ */
+final class SortedMergeCursor extends AbstractCursor {
+
+    private final Cursor[] mRuns;
+
+    // The run and position within it of each row, in merged order.
+    private final int[] mRunIndices;
+    private final int[] mRunPositions;
+
+    private Cursor mCursor;
+
+    SortedMergeCursor(Cursor[] runs) {
+        mRuns = runs;
+
+        int count = 0;
+        boolean sorted = true;
+        for (Cursor run : runs) {
+            count += run.getCount();
+            sorted &= run instanceof SortingCursorWrapper;
+        }
+        mRunIndices = new int[count];
+        mRunPositions = new int[count];
+
+        if (sorted) {
+            merge();
+        } else {
+            concatenate();
+        }
+    }
+
+    private void concatenate() {
+        int row = 0;
+        for (int i = 0; i < mRuns.length; i++) {
+            final int runCount = mRuns[i].getCount();
+            for (int position = 0; position < runCount; position++) {
+                mRunIndices[row] = i;
+                mRunPositions[row] = position;
+                row++;
+            }
+        }
+    }
+
+    private void merge() {
+        final SortingCursorWrapper[] runs = new SortingCursorWrapper[mRuns.length];
+        final int[] counts = new int[mRuns.length];
+        final int[] heads = new int[mRuns.length];
+
+        // Min-heap of the indices of the runs that still have rows, ordered by their head row.
+        final int[] heap = new int[mRuns.length];
+        int heapSize = 0;
+        for (int i = 0; i < mRuns.length; i++) {
+            runs[i] = (SortingCursorWrapper) mRuns[i];
+            counts[i] = runs[i].getCount();
+            if (counts[i] > 0) {
+                heap[heapSize++] = i;
+            }
+        }
+        for (int i = heapSize / 2 - 1; i >= 0; i--) {
+            siftDown(heap, heapSize, i, runs, heads);
+        }
+
+        int row = 0;
+        while (heapSize > 0) {
+            final int run = heap[0];
+            mRunIndices[row] = run;
+            mRunPositions[row] = heads[run];
+            row++;
+
+            if (++heads[run] == counts[run]) {
+                heap[0] = heap[--heapSize];
+            }
+            siftDown(heap, heapSize, 0, runs, heads);
+        }
+    }
+
+    private static void siftDown(
+            int[] heap, int heapSize, int index, SortingCursorWrapper[] runs, int[] heads) {
+        final int run = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize
+                    && compareHeads(heap[child + 1], heap[child], runs, heads) < 0) {
+                child++;
+            }
+            if (compareHeads(run, heap[child], runs, heads) <= 0) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = run;
+    }
+
+    /**
+     * Compares the next rows of two runs. Equal rows are ordered by run, so the merge is stable
+     * with respect to the order the runs were given in.
+     */
+    private static int compareHeads(
+            int lhs, int rhs, SortingCursorWrapper[] runs, int[] heads) {
+        final int compare = runs[lhs].compareRows(heads[lhs], runs[rhs], heads[rhs]);
+        return compare != 0 ? compare : Integer.compare(lhs, rhs);
+    }
+
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        mCursor = mRuns[mRunIndices[newPosition]];
+        return mCursor.moveToPosition(mRunPositions[newPosition]);
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mRuns.length > 0 ? mRuns[0].getColumnNames() : new String[0];
+    }
+
+    @Override
+    public int getCount() {
+        return mRunIndices.length;
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return mCursor.getDouble(column);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return mCursor.getFloat(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return mCursor.getInt(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        return mCursor.getLong(column);
+    }
+
+    @Override
+    public short getShort(int column) {
+        return mCursor.getShort(column);
+    }
+
+    @Override
+    public String getString(int column) {
+        return mCursor.getString(column);
+    }
+
+    @Override
+    public byte[] getBlob(int column) {
+        return mCursor.getBlob(column);
+    }
+
+    @Override
+    public int getType(int column) {
+        return mCursor.getType(column);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return mCursor.isNull(column);
+    }
+
+    @Override
+    public void registerContentObserver(ContentObserver observer) {
+        for (Cursor run : mRuns) {
+            run.registerContentObserver(observer);
+        }
+    }
+
+    @Override
+    public void unregisterContentObserver(ContentObserver observer) {
+        for (Cursor run : mRuns) {
+            run.unregisterContentObserver(observer);
+        }
+    }
+}
@@ -19,81 +19,465 @@ package com.android.documentsui.sorting;
 import static com.android.documentsui.base.DocumentInfo.getCursorLong;
 import static com.android.documentsui.base.DocumentInfo.getCursorString;
 
+import android.content.ContentResolver;
 import android.database.AbstractCursor;
 import android.database.ContentObserver;
 import android.database.Cursor;
 import android.os.Bundle;
 import android.provider.DocumentsContract.Document;
+import android.util.SparseArray;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
 
 import com.android.documentsui.base.Lookup;
 import com.android.documentsui.base.Shared;
+import com.android.documentsui.base.SnapshotCursor;
+import com.android.documentsui.sorting.PermutationSorter.IndexComparator;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Cursor wrapper that presents a sorted view of the underlying cursor. Handles
  * common {@link Document} sorting modes, such as ordering directories first.
  */
 class SortingCursorWrapper extends AbstractCursor {
+    /**
+     * Below this many rows, generating collation keys on one thread is faster than forking.
+     */
+    private static final int PARALLEL_COLLATION_THRESHOLD = 4096;
+
+    /**
+     * Collators used when generating collation keys in parallel, one per worker thread.
+     */
+    private static final ThreadLocal<Collator> sCollators =
+            ThreadLocal.withInitial(Shared::newCollator);
+
+    private final Source mSource;
     private final Cursor mCursor;
+    // Whether this cursor holds a reference to mSource, see newReader().
+    private final boolean mOwnsSource;
 
     private final int[] mPosition;
 
+    // Sort keys of each row, indexed by position in the wrapped cursor. Kept after sorting so
+    // that rows of separately sorted cursors can be merged; see compareRows.
+    private final boolean[] mIsDirs;
+    private final String[] mIds;
+    private final CollationKey[] mCollationKeys;
+    private final long[] mLongKeys;
+    private final int mSign;
+
     public SortingCursorWrapper(
             Cursor cursor, SortDimension dimension, Lookup<String, String> fileTypeLookup) {
+        this(cursor, dimension, fileTypeLookup, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param parallelThreshold listings with at least this many rows are sorted in parallel on
+     *         the common fork/join pool
+     */
+    SortingCursorWrapper(Cursor cursor, SortDimension dimension,
+            Lookup<String, String> fileTypeLookup, int parallelThreshold) {
+        this(new Source(cursor), dimension, fileTypeLookup, parallelThreshold);
+    }
+
+    private SortingCursorWrapper(Source source, SortDimension dimension,
+            Lookup<String, String> fileTypeLookup, int parallelThreshold) {
+        this(source, dimension, fileTypeLookup, parallelThreshold, null);
+    }
+
+    /**
+     * @param prefixAscending the ascending order of the first rows of {@code source}, if known,
+     *         in which case only the rows after them are sorted
+     */
+    private SortingCursorWrapper(Source source, SortDimension dimension,
+            Lookup<String, String> fileTypeLookup, int parallelThreshold,
+            @Nullable int[] prefixAscending) {
+        mSource = source;
+        mCursor = source.mCursor;
+        mOwnsSource = true;
+        mIsDirs = source.mIsDirs;
+        mIds = source.mIds;
+
+        final int id = dimension.getId();
+        mCollationKeys = source.getCollationKeys(id, fileTypeLookup);
+        mLongKeys = source.getLongKeys(id);
+        if (mCollationKeys == null && mLongKeys == null) {
+            // Not a sortable dimension; keep the original order.
+            mSign = 0;
+            mPosition = source.getIdentityPositions();
+            return;
+        }
+        mSign = getSign(dimension.getSortDirection());
+
+        int[] ascending = source.getAscendingPositions(id);
+        if (ascending == null) {
+            ascending = prefixAscending != null
+                    ? sortAppended(prefixAscending)
+                    : sortAscending(parallelThreshold);
+            source.putAscendingPositions(id, ascending);
+        }
+        mPosition = mSign > 0 ? ascending : toDescending(ascending);
+    }
+
+    private SortingCursorWrapper(SortingCursorWrapper other, Source source, Cursor cursor,
+            boolean ownsSource) {
+        mSource = source;
         mCursor = cursor;
+        mOwnsSource = ownsSource;
+        mPosition = other.mPosition;
+        mIsDirs = other.mIsDirs;
+        mIds = other.mIds;
+        mCollationKeys = other.mCollationKeys;
+        mLongKeys = other.mLongKeys;
+        mSign = other.mSign;
+    }
 
-        final int count = cursor.getCount();
-        mPosition = new int[count];
-        boolean[] isDirs = new boolean[count];
-        String[] stringValues = null;
-        long[] longValues = null;
-        String[] ids = new String[count];
+    /**
+     * Returns a cursor over the same rows as {@code cursor}, in the same order, that can be
+     * closed independently of it. Nothing is read or sorted again. The wrapped cursor is closed
+     * once both cursors are.
+     *
+     * @return the new cursor, or null if {@code cursor} and every other cursor sharing its rows
+     *         were closed
+     */
+    static @Nullable SortingCursorWrapper share(SortingCursorWrapper cursor) {
+        if (!cursor.mSource.acquire()) {
+            return null;
+        }
+        // Rows of a snapshot can be read at a position of each cursor's own.
+        final Cursor wrapped = cursor.mCursor instanceof SnapshotCursor
+                ? ((SnapshotCursor) cursor.mCursor).share()
+                : cursor.mCursor;
+        return new SortingCursorWrapper(cursor, cursor.mSource, wrapped, true);
+    }
 
+    /**
+     * Returns a cursor over the same rows as {@code cursor}, in the same order, with a position
+     * of its own in the wrapped cursor, so that it can be read on another thread while
+     * {@code cursor} is. It doesn't keep the rows open, so it needn't be closed.
+     *
+     * @return the new cursor, or null if the wrapped cursor is not a {@link SnapshotCursor},
+     *         whose rows are the only ones that can be read at several positions at once
+     */
+    static @Nullable SortingCursorWrapper newReader(SortingCursorWrapper cursor) {
+        if (!(cursor.mCursor instanceof SnapshotCursor)) {
+            return null;
+        }
+        return new SortingCursorWrapper(
+                cursor, cursor.mSource, ((SnapshotCursor) cursor.mCursor).share(), false);
+    }
+
+    /**
+     * Returns a cursor over the same rows as {@code cursor}, in the same order, over a copy of
+     * the wrapped snapshot that doesn't hold the provider's cursor, see
+     * {@link SnapshotCursor#detach}. Nothing is read or sorted again. It can be closed
+     * independently of {@code cursor}, and shared in turn.
+     *
+     * @return the new cursor, or null if the wrapped cursor is not a {@link SnapshotCursor}
+     */
+    static @Nullable SortingCursorWrapper detach(
+            SortingCursorWrapper cursor, ContentResolver resolver) {
+        if (!(cursor.mCursor instanceof SnapshotCursor)) {
+            return null;
+        }
+        final Cursor detached = ((SnapshotCursor) cursor.mCursor).detach(resolver);
+        return new SortingCursorWrapper(
+                cursor, new Source(cursor.mSource, detached), detached, true);
+    }
+
+    /**
+     * Returns a cursor over the same rows as {@code cursor}, sorted by {@code dimension}. The
+     * rows are not read again: the new cursor shares the wrapped cursor and the keys already
+     * read from it, and only generates the collation keys of a dimension the first time it is
+     * sorted by. Each ordering is sorted once; the opposite direction is then derived from it in
+     * linear time. The wrapped cursor is closed once both cursors are.
+     *
+     * @return the re-sorted cursor, or null if {@code cursor} and every other cursor sharing its
+     *         rows were closed
+     */
+    static @Nullable SortingCursorWrapper resort(SortingCursorWrapper cursor,
+            SortDimension dimension, Lookup<String, String> fileTypeLookup,
+            int parallelThreshold) {
+        if (!cursor.mSource.acquire()) {
+            return null;
+        }
+        return new SortingCursorWrapper(
+                cursor.mSource, dimension, fileTypeLookup, parallelThreshold);
+    }
+
+    /**
+     * Returns a cursor over the rows of {@code cursor}, sorted by {@code dimension}, where the
+     * first rows of {@code cursor} are the rows {@code previous} wraps and the others were
+     * appended since, as by a provider still loading the listing. Only the appended rows are
+     * read and sorted, then merged into the order of the others, so the cost grows with the
+     * number of appended rows rather than with all of them. Of the other rows, only the
+     * document ID is read, to check that they are the same.
+     *
+     * @return the sorted cursor, or null if the first rows of {@code cursor} are not those of
+     *         {@code previous}
+     */
+    static @Nullable SortingCursorWrapper extend(SortingCursorWrapper previous, Cursor cursor,
+            SortDimension dimension, Lookup<String, String> fileTypeLookup) {
+        final Source source = Source.extend(previous.mSource, cursor, fileTypeLookup);
+        if (source == null) {
+            return null;
+        }
+        return new SortingCursorWrapper(source, dimension, fileTypeLookup, Integer.MAX_VALUE,
+                previous.mSource.getAscendingPositions(dimension.getId()));
+    }
+
+    /**
+     * Returns, for each position of {@code to}, the position of the same row in {@code from},
+     * or -1 for rows {@code from} doesn't have. {@code to} must have been returned by
+     * {@link #extend} for {@code from}.
+     */
+    static int[] mapExtendedPositions(SortingCursorWrapper from, SortingCursorWrapper to) {
+        final int[] fromPositions = new int[from.mPosition.length];
+        for (int i = 0; i < fromPositions.length; i++) {
+            fromPositions[from.mPosition[i]] = i;
+        }
+        final int[] positions = new int[to.mPosition.length];
+        for (int i = 0; i < positions.length; i++) {
+            final int row = to.mPosition[i];
+            positions[i] = row < fromPositions.length ? fromPositions[row] : -1;
+        }
+        return positions;
+    }
+
+    /**
+     * Returns, for each position of {@code to}, the position of the same row in {@code from}.
+     * Both cursors must share their rows, e.g. one was returned by {@link #resort} for the other.
+     */
+    static int[] mapPositions(SortingCursorWrapper from, SortingCursorWrapper to) {
+        if (from.mSource != to.mSource) {
+            throw new IllegalArgumentException("Cursors do not share their rows");
+        }
+        final int count = from.mPosition.length;
+        final int[] fromPositions = new int[count];
+        for (int i = 0; i < count; i++) {
+            fromPositions[from.mPosition[i]] = i;
+        }
+        final int[] positions = new int[count];
+        for (int i = 0; i < count; i++) {
+            positions[i] = fromPositions[to.mPosition[i]];
+        }
+        return positions;
+    }
+
+    private int[] sortAscending(int parallelThreshold) {
+        final int[] positions = mSource.getIdentityPositions().clone();
+        final IndexComparator comparator = (lhs, rhs) -> compareOriginalRows(lhs, this, rhs, 1);
+        if (positions.length >= parallelThreshold) {
+            PermutationSorter.parallelSort(positions, comparator, ForkJoinPool.commonPool());
+        } else {
+            PermutationSorter.sort(positions, comparator);
+        }
+        return positions;
+    }
+
+    /**
+     * Sorts the rows after the first {@code prefix.length} ones, which are in ascending order
+     * {@code prefix}, and merges them in. Each appended row is placed by binary search, so this
+     * takes O(d log n) comparisons for d appended rows, plus copying the positions.
+     */
+    private int[] sortAppended(int[] prefix) {
+        final int prefixCount = prefix.length;
+        final int count = mIds.length;
+        final int[] appended = new int[count - prefixCount];
+        for (int i = 0; i < appended.length; i++) {
+            appended[i] = prefixCount + i;
+        }
+        final IndexComparator comparator = (lhs, rhs) -> compareOriginalRows(lhs, this, rhs, 1);
+        PermutationSorter.sort(appended, comparator);
+
+        final int[] positions = new int[count];
+        int from = 0;
+        int to = 0;
+        for (int row : appended) {
+            // No two rows are equal, since ties are broken by document ID.
+            int low = from;
+            int high = prefixCount;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (comparator.compare(prefix[mid], row) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            System.arraycopy(prefix, from, positions, to, low - from);
+            to += low - from;
+            from = low;
+            positions[to++] = row;
+        }
+        System.arraycopy(prefix, from, positions, to, prefixCount - from);
+        return positions;
+    }
+
+    /**
+     * Derives the descending order from the ascending one in linear time. Directories stay in
+     * front and ties stay ordered by ascending document ID, so this is not a plain reversal: the
+     * directory and file blocks are reversed separately, then each run of equal keys is
+     * reversed back.
+     */
+    private int[] toDescending(int[] ascending) {
+        final int count = ascending.length;
+        final int[] positions = new int[count];
+
+        int dirCount = 0;
+        while (dirCount < count && mIsDirs[ascending[dirCount]]) {
+            dirCount++;
+        }
+        for (int i = 0; i < dirCount; i++) {
+            positions[i] = ascending[dirCount - 1 - i];
+        }
+        for (int i = dirCount; i < count; i++) {
+            positions[i] = ascending[count - 1 - (i - dirCount)];
+        }
+
+        int runStart = 0;
+        for (int i = 1; i <= count; i++) {
+            if (i == count || i == dirCount
+                    || compareKeys(positions[runStart], this, positions[i]) != 0) {
+                reverse(positions, runStart, i);
+                runStart = i;
+            }
+        }
+        return positions;
+    }
+
+    private static void reverse(int[] values, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            final int value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+    }
+
+    /**
+     * Returns whether the rows of {@code cursor} are already in the order a wrapper sorting by
+     * {@code dimension} would put them in, e.g. because the provider honored the sort args it
+     * was queried with. Reads each row once and compares it with the previous one under the
+     * same rules as the sort, so it is linear in the row count and stops at the first row out of
+     * order.
+     */
+    static boolean isSorted(Cursor cursor, SortDimension dimension,
+            Lookup<String, String> fileTypeLookup) {
         final int id = dimension.getId();
-        if (id == SortModel.SORT_DIMENSION_ID_TITLE
-                || id == SortModel.SORT_DIMENSION_ID_FILE_TYPE) {
-            stringValues = new String[count];
-        } else if (id == SortModel.SORT_DIMENSION_ID_DATE
-                || id == SortModel.SORT_DIMENSION_ID_SIZE) {
-            longValues = new long[count];
+        final boolean byString = id == SortModel.SORT_DIMENSION_ID_TITLE
+                || id == SortModel.SORT_DIMENSION_ID_FILE_TYPE;
+        final boolean byLong = id == SortModel.SORT_DIMENSION_ID_DATE
+                || id == SortModel.SORT_DIMENSION_ID_SIZE;
+        if (!byString && !byLong) {
+            // Not a sortable dimension; any order is kept as is.
+            return true;
         }
 
+        final int sign = getSign(dimension.getSortDirection());
+        final Collator collator = byString ? Shared.newCollator() : null;
+
+        boolean prevIsDir = false;
+        String prevId = null;
+        String prevString = null;
+        long prevLong = 0;
         cursor.moveToPosition(-1);
-        for (int i = 0; i < count; i++) {
-            cursor.moveToNext();
-            mPosition[i] = i;
-
-            final String mimeType = getCursorString(mCursor, Document.COLUMN_MIME_TYPE);
-            isDirs[i] = Document.MIME_TYPE_DIR.equals(mimeType);
-            ids[i] = getCursorString(mCursor, Document.COLUMN_DOCUMENT_ID);
-
-            if (id == SortModel.SORT_DIMENSION_ID_TITLE) {
-                final String displayName = getCursorString(
-                        mCursor, Document.COLUMN_DISPLAY_NAME);
-                stringValues[i] = displayName;
-            } else if (id == SortModel.SORT_DIMENSION_ID_FILE_TYPE) {
-                stringValues[i] = fileTypeLookup.lookup(mimeType);
-            } else if (id == SortModel.SORT_DIMENSION_ID_DATE) {
-                longValues[i] = getLastModified(mCursor);
-            } else if (id == SortModel.SORT_DIMENSION_ID_SIZE) {
-                longValues[i] = getCursorLong(mCursor, Document.COLUMN_SIZE);
+        for (int i = 0; cursor.moveToNext(); i++) {
+            final String mimeType = getCursorString(cursor, Document.COLUMN_MIME_TYPE);
+            final boolean isDir = Document.MIME_TYPE_DIR.equals(mimeType);
+            final String docId = getCursorString(cursor, Document.COLUMN_DOCUMENT_ID);
+            final String string = byString
+                    ? getStringKey(cursor, id, mimeType, fileTypeLookup)
+                    : null;
+            final long value = byLong ? getLongKey(cursor, id) : 0;
+
+            if (i > 0) {
+                int compare;
+                if (prevIsDir != isDir) {
+                    compare = prevIsDir ? -1 : 1;
+                } else {
+                    compare = sign * (byString
+                            ? Shared.compareToIgnoreCaseNullable(collator, prevString, string)
+                            : Long.compare(prevLong, value));
+                    if (compare == 0) {
+                        compare = prevId.compareTo(docId);
+                    }
+                }
+                if (compare > 0) {
+                    return false;
+                }
             }
 
+            prevIsDir = isDir;
+            prevId = docId;
+            prevString = string;
+            prevLong = value;
         }
+        return true;
+    }
+
+    /**
+     * Compares the row at sorted {@code position} of this cursor with the row at sorted
+     * {@code otherPosition} of {@code other}. Both cursors must have been sorted by the same
+     * dimension and direction. Does not move either cursor.
+     */
+    int compareRows(int position, SortingCursorWrapper other, int otherPosition) {
+        return compareOriginalRows(
+                mPosition[position], other, other.mPosition[otherPosition], mSign);
+    }
 
-        if (id == SortModel.SORT_DIMENSION_ID_TITLE
-                || id == SortModel.SORT_DIMENSION_ID_FILE_TYPE) {
-            binarySort(stringValues, isDirs, mPosition, ids, dimension.getSortDirection());
-        } else if (id == SortModel.SORT_DIMENSION_ID_DATE
-                || id == SortModel.SORT_DIMENSION_ID_SIZE) {
-            binarySort(longValues, isDirs, mPosition, ids, dimension.getSortDirection());
+    /**
+     * Applies the common {@link Document} ordering rules to two rows, given by their positions
+     * in the wrapped cursors: directories always go in front, the sort key is compared in the
+     * direction given by {@code sign}, and ties are broken by document ID. Rows of an unsortable
+     * dimension are all equal.
+     */
+    private int compareOriginalRows(int lhs, SortingCursorWrapper other, int rhs, int sign) {
+        if (sign == 0) {
+            return 0;
+        }
+
+        // Directories always go in front.
+        final boolean lhsIsDir = mIsDirs[lhs];
+        if (lhsIsDir != other.mIsDirs[rhs]) {
+            return lhsIsDir ? -1 : 1;
+        }
+
+        final int compare = compareKeys(lhs, other, rhs);
+        if (compare != 0) {
+            return sign * compare;
         }
 
+        // If the sort key yields a tie, use document ID as a tie breaker.  This will yield
+        // stable results even if incoming items are continually shuffling and have identical
+        // sort keys.  One common example of this scenario is seen when sorting a set of
+        // active downloads by mod time.
+        return mIds[lhs].compareTo(other.mIds[rhs]);
+    }
+
+    private int compareKeys(int lhs, SortingCursorWrapper other, int rhs) {
+        return mCollationKeys != null
+                ? Shared.compareCollationKeysNullable(
+                        mCollationKeys[lhs], other.mCollationKeys[rhs])
+                : Long.compare(mLongKeys[lhs], other.mLongKeys[rhs]);
     }
 
     @Override
     public void close() {
+        if (isClosed()) {
+            return;
+        }
         super.close();
-        mCursor.close();
+        if (mOwnsSource) {
+            mSource.release();
+        }
     }
 
     @Override
@@ -166,6 +550,19 @@ class SortingCursorWrapper extends AbstractCursor {
         mCursor.unregisterContentObserver(observer);
     }
 
+    private static String getStringKey(Cursor cursor, int dimensionId, String mimeType,
+            Lookup<String, String> fileTypeLookup) {
+        return dimensionId == SortModel.SORT_DIMENSION_ID_TITLE
+                ? getCursorString(cursor, Document.COLUMN_DISPLAY_NAME)
+                : fileTypeLookup.lookup(mimeType);
+    }
+
+    private static long getLongKey(Cursor cursor, int dimensionId) {
+        return dimensionId == SortModel.SORT_DIMENSION_ID_DATE
+                ? getLastModified(cursor)
+                : getCursorLong(cursor, Document.COLUMN_SIZE);
+    }
+
     /**
      * @return Timestamp for the given document. Some docs (e.g. active downloads) have a null
      * timestamp - these will be replaced with MAX_LONG so that such files get sorted to the top
@@ -177,171 +574,266 @@ class SortingCursorWrapper extends AbstractCursor {
     }
 
     /**
-     * Borrowed from TimSort.binarySort(), but modified to sort two column
-     * dataset.
+     * Builds the collation key of each value once so the sort compares the keys rather than
+     * running the collator on every comparison.
+     *
+     * @param fewDistinct whether the values are drawn from a small set, e.g. file type labels,
+     *         in which case each distinct value is collated only once
      */
-    private static void binarySort(
-            String[] sortKey,
-            boolean[] isDirs,
-            int[] positions,
-            String[] ids,
-            @SortDimension.SortDirection int direction) {
-        final int count = positions.length;
-        for (int start = 1; start < count; start++) {
-            final int pivotPosition = positions[start];
-            final String pivotValue = sortKey[start];
-            final boolean pivotIsDir = isDirs[start];
-            final String pivotId = ids[start];
-
-            int left = 0;
-            int right = start;
-
-            while (left < right) {
-                int mid = (left + right) >>> 1;
-
-                // Directories always go in front.
-                int compare = 0;
-                final boolean rhsIsDir = isDirs[mid];
-                if (pivotIsDir && !rhsIsDir) {
-                    compare = -1;
-                } else if (!pivotIsDir && rhsIsDir) {
-                    compare = 1;
-                } else {
-                    final String lhs = pivotValue;
-                    final String rhs = sortKey[mid];
-                    switch (direction) {
-                        case SortDimension.SORT_DIRECTION_ASCENDING:
-                            compare = Shared.compareToIgnoreCaseNullable(lhs, rhs);
-                            break;
-                        case SortDimension.SORT_DIRECTION_DESCENDING:
-                            compare = -Shared.compareToIgnoreCaseNullable(lhs, rhs);
-                            break;
-                        default:
-                            throw new IllegalArgumentException(
-                                    "Unknown sorting direction: " + direction);
-                    }
+    private static CollationKey[] getCollationKeys(String[] values, boolean fewDistinct) {
+        final CollationKey[] keys = new CollationKey[values.length];
+
+        if (fewDistinct) {
+            final Collator collator = Shared.newCollator();
+            final Map<String, CollationKey> distinct = new HashMap<>();
+            for (int i = 0; i < values.length; i++) {
+                final String value = values[i];
+                CollationKey key = distinct.get(value);
+                if (key == null && !distinct.containsKey(value)) {
+                    key = Shared.getCollationKeyNullable(collator, value);
+                    distinct.put(value, key);
                 }
+                keys[i] = key;
+            }
+        } else if (values.length >= PARALLEL_COLLATION_THRESHOLD) {
+            Arrays.parallelSetAll(keys,
+                    i -> Shared.getCollationKeyNullable(sCollators.get(), values[i]));
+        } else {
+            final Collator collator = Shared.newCollator();
+            for (int i = 0; i < values.length; i++) {
+                keys[i] = Shared.getCollationKeyNullable(collator, values[i]);
+            }
+        }
 
-                // Use document ID as a tie breaker to achieve stable sort result.
-                if (compare == 0) {
-                    compare = pivotId.compareTo(ids[mid]);
-                }
+        return keys;
+    }
 
-                if (compare < 0) {
-                    right = mid;
-                } else {
-                    left = mid + 1;
+    /**
+     * The rows of a wrapped cursor and the sort keys read from them, shared by every
+     * {@link SortingCursorWrapper} sorting those rows, and closed with the last of them.
+     * All sortable columns are read in the same single pass over the cursor, so sorting by
+     * another dimension later does not read the cursor again.
+     */
+    private static final class Source {
+        final Cursor mCursor;
+        final boolean[] mIsDirs;
+        final String[] mIds;
+
+        private final String[] mDisplayNames;
+        private final String[] mMimeTypes;
+        private final long[] mLastModified;
+        private final long[] mSizes;
+        private final int[] mIdentityPositions;
+
+        @GuardedBy("this")
+        private final SparseArray<CollationKey[]> mCollationKeys = new SparseArray<>();
+        @GuardedBy("this")
+        private final SparseArray<int[]> mAscendingPositions = new SparseArray<>();
+        @GuardedBy("this")
+        private int mRefCount = 1;
+
+        Source(Cursor cursor) {
+            this(cursor, cursor.getCount());
+            readRows(0);
+        }
+
+        /**
+         * Creates a source over {@code cursor}, which holds the same rows as {@code other}, that
+         * reuses everything read and sorted from {@code other}, and is closed independently of
+         * it.
+         */
+        Source(Source other, Cursor cursor) {
+            mCursor = cursor;
+            mIsDirs = other.mIsDirs;
+            mIds = other.mIds;
+            mDisplayNames = other.mDisplayNames;
+            mMimeTypes = other.mMimeTypes;
+            mLastModified = other.mLastModified;
+            mSizes = other.mSizes;
+            mIdentityPositions = other.mIdentityPositions;
+            synchronized (other) {
+                for (int i = 0; i < other.mCollationKeys.size(); i++) {
+                    mCollationKeys.put(
+                            other.mCollationKeys.keyAt(i), other.mCollationKeys.valueAt(i));
+                }
+                for (int i = 0; i < other.mAscendingPositions.size(); i++) {
+                    mAscendingPositions.put(other.mAscendingPositions.keyAt(i),
+                            other.mAscendingPositions.valueAt(i));
                 }
             }
+        }
 
-            int n = start - left;
-            switch (n) {
-                case 2:
-                    positions[left + 2] = positions[left + 1];
-                    sortKey[left + 2] = sortKey[left + 1];
-                    isDirs[left + 2] = isDirs[left + 1];
-                case 1:
-                    positions[left + 1] = positions[left];
-                    sortKey[left + 1] = sortKey[left];
-                    isDirs[left + 1] = isDirs[left];
-                    break;
-                default:
-                    System.arraycopy(positions, left, positions, left + 1, n);
-                    System.arraycopy(sortKey, left, sortKey, left + 1, n);
-                    System.arraycopy(isDirs, left, isDirs, left + 1, n);
+        private Source(Cursor cursor, int count) {
+            mCursor = cursor;
+
+            mIsDirs = new boolean[count];
+            mIds = new String[count];
+            mDisplayNames = new String[count];
+            mMimeTypes = new String[count];
+            mLastModified = new long[count];
+            mSizes = new long[count];
+            mIdentityPositions = new int[count];
+            for (int i = 0; i < count; i++) {
+                mIdentityPositions[i] = i;
             }
+        }
 
-            positions[left] = pivotPosition;
-            sortKey[left] = pivotValue;
-            isDirs[left] = pivotIsDir;
+        private void readRows(int from) {
+            mCursor.moveToPosition(from - 1);
+            for (int i = from; i < mIds.length; i++) {
+                mCursor.moveToNext();
+
+                final String mimeType = getCursorString(mCursor, Document.COLUMN_MIME_TYPE);
+                mIsDirs[i] = Document.MIME_TYPE_DIR.equals(mimeType);
+                mIds[i] = getCursorString(mCursor, Document.COLUMN_DOCUMENT_ID);
+                mMimeTypes[i] = mimeType;
+                mDisplayNames[i] = getCursorString(mCursor, Document.COLUMN_DISPLAY_NAME);
+                mLastModified[i] = getLastModified(mCursor);
+                mSizes[i] = getCursorLong(mCursor, Document.COLUMN_SIZE);
+            }
         }
-    }
 
-    /**
-     * Borrowed from TimSort.binarySort(), but modified to sort two column
-     * dataset.
-     */
-    private static void binarySort(
-            long[] sortKey,
-            boolean[] isDirs,
-            int[] positions,
-            String[] ids,
-            @SortDimension.SortDirection int direction) {
-        final int count = positions.length;
-        for (int start = 1; start < count; start++) {
-            final int pivotPosition = positions[start];
-            final long pivotValue = sortKey[start];
-            final boolean pivotIsDir = isDirs[start];
-            final String pivotId = ids[start];
-
-            int left = 0;
-            int right = start;
-
-            while (left < right) {
-                int mid = ((left + right) >>> 1);
-
-                // Directories always go in front.
-                int compare = 0;
-                final boolean rhsIsDir = isDirs[mid];
-                if (pivotIsDir && !rhsIsDir) {
-                    compare = -1;
-                } else if (!pivotIsDir && rhsIsDir) {
-                    compare = 1;
-                } else {
-                    final long lhs = pivotValue;
-                    final long rhs = sortKey[mid];
-                    switch (direction) {
-                        case SortDimension.SORT_DIRECTION_ASCENDING:
-                            compare = Long.compare(lhs, rhs);
-                            break;
-                        case SortDimension.SORT_DIRECTION_DESCENDING:
-                            compare = -Long.compare(lhs, rhs);
-                            break;
-                        default:
-                            throw new IllegalArgumentException(
-                                    "Unknown sorting direction: " + direction);
-                    }
+        /**
+         * Returns a source for {@code cursor}, reusing what was read from {@code previous} for
+         * the rows they share, or null if the first rows of {@code cursor} are not the rows of
+         * {@code previous}. Collation keys {@code previous} generated are extended to the rows
+         * after those.
+         */
+        static @Nullable Source extend(
+                Source previous, Cursor cursor, Lookup<String, String> fileTypeLookup) {
+            final int prefixCount = previous.mIds.length;
+            final int count = cursor.getCount();
+            if (count < prefixCount) {
+                return null;
+            }
+            final int idIndex = cursor.getColumnIndex(Document.COLUMN_DOCUMENT_ID);
+            cursor.moveToPosition(-1);
+            for (int i = 0; i < prefixCount; i++) {
+                cursor.moveToNext();
+                final String id = idIndex != -1 ? cursor.getString(idIndex) : null;
+                if (!Objects.equals(previous.mIds[i], id)) {
+                    return null;
                 }
+            }
 
-                // If numerical comparison yields a tie, use document ID as a tie breaker.  This
-                // will yield stable results even if incoming items are continually shuffling and
-                // have identical numerical sort keys.  One common example of this scenario is seen
-                // when sorting a set of active downloads by mod time.
-                if (compare == 0) {
-                    compare = pivotId.compareTo(ids[mid]);
+            final Source source = new Source(cursor, count);
+            System.arraycopy(previous.mIsDirs, 0, source.mIsDirs, 0, prefixCount);
+            System.arraycopy(previous.mIds, 0, source.mIds, 0, prefixCount);
+            System.arraycopy(previous.mDisplayNames, 0, source.mDisplayNames, 0, prefixCount);
+            System.arraycopy(previous.mMimeTypes, 0, source.mMimeTypes, 0, prefixCount);
+            System.arraycopy(previous.mLastModified, 0, source.mLastModified, 0, prefixCount);
+            System.arraycopy(previous.mSizes, 0, source.mSizes, 0, prefixCount);
+            source.readRows(prefixCount);
+
+            synchronized (previous) {
+                for (int i = 0; i < previous.mCollationKeys.size(); i++) {
+                    final int dimensionId = previous.mCollationKeys.keyAt(i);
+                    final CollationKey[] keys = Arrays.copyOf(
+                            previous.mCollationKeys.valueAt(i), count);
+                    final CollationKey[] appendedKeys = SortingCursorWrapper.getCollationKeys(
+                            source.getSortStrings(dimensionId, fileTypeLookup, prefixCount),
+                            dimensionId == SortModel.SORT_DIMENSION_ID_FILE_TYPE);
+                    System.arraycopy(
+                            appendedKeys, 0, keys, prefixCount, appendedKeys.length);
+                    synchronized (source) {
+                        source.mCollationKeys.put(dimensionId, keys);
+                    }
                 }
+            }
+            return source;
+        }
 
-                if (compare < 0) {
-                    right = mid;
-                } else {
-                    left = mid + 1;
+        int[] getIdentityPositions() {
+            return mIdentityPositions;
+        }
+
+        /**
+         * @return the collation keys of the given dimension, or null if it is not sorted by a
+         *         string
+         */
+        synchronized @Nullable CollationKey[] getCollationKeys(
+                int dimensionId, Lookup<String, String> fileTypeLookup) {
+            CollationKey[] keys = mCollationKeys.get(dimensionId);
+            if (keys != null) {
+                return keys;
+            }
+
+            final String[] strings = getSortStrings(dimensionId, fileTypeLookup, 0);
+            if (strings == null) {
+                return null;
+            }
+            keys = SortingCursorWrapper.getCollationKeys(
+                    strings, dimensionId == SortModel.SORT_DIMENSION_ID_FILE_TYPE);
+            mCollationKeys.put(dimensionId, keys);
+            return keys;
+        }
+
+        /**
+         * @return the strings the rows from {@code from} on are sorted by in the given
+         *         dimension, or null if it is not sorted by a string
+         */
+        private @Nullable String[] getSortStrings(
+                int dimensionId, Lookup<String, String> fileTypeLookup, int from) {
+            if (dimensionId == SortModel.SORT_DIMENSION_ID_TITLE) {
+                return from == 0
+                        ? mDisplayNames
+                        : Arrays.copyOfRange(mDisplayNames, from, mDisplayNames.length);
+            } else if (dimensionId == SortModel.SORT_DIMENSION_ID_FILE_TYPE) {
+                final String[] fileTypes = new String[mMimeTypes.length - from];
+                for (int i = 0; i < fileTypes.length; i++) {
+                    fileTypes[i] = fileTypeLookup.lookup(mMimeTypes[from + i]);
                 }
+                return fileTypes;
+            }
+            return null;
+        }
+
+        /**
+         * @return the keys of the given dimension, or null if it is not sorted by a number
+         */
+        @Nullable long[] getLongKeys(int dimensionId) {
+            if (dimensionId == SortModel.SORT_DIMENSION_ID_DATE) {
+                return mLastModified;
+            } else if (dimensionId == SortModel.SORT_DIMENSION_ID_SIZE) {
+                return mSizes;
             }
+            return null;
+        }
+
+        synchronized @Nullable int[] getAscendingPositions(int dimensionId) {
+            return mAscendingPositions.get(dimensionId);
+        }
+
+        synchronized void putAscendingPositions(int dimensionId, int[] positions) {
+            mAscendingPositions.put(dimensionId, positions);
+        }
 
-            int n = start - left;
-            switch (n) {
-                case 2:
-                    positions[left + 2] = positions[left + 1];
-                    sortKey[left + 2] = sortKey[left + 1];
-                    isDirs[left + 2] = isDirs[left + 1];
-                    ids[left + 2] = ids[left + 1];
-                case 1:
-                    positions[left + 1] = positions[left];
-                    sortKey[left + 1] = sortKey[left];
-                    isDirs[left + 1] = isDirs[left];
-                    ids[left + 1] = ids[left];
-                    break;
-                default:
-                    System.arraycopy(positions, left, positions, left + 1, n);
-                    System.arraycopy(sortKey, left, sortKey, left + 1, n);
-                    System.arraycopy(isDirs, left, isDirs, left + 1, n);
-                    System.arraycopy(ids, left, ids, left + 1, n);
+        /**
+         * @return false if the source was already closed
+         */
+        synchronized boolean acquire() {
+            if (mRefCount == 0) {
+                return false;
             }
+            mRefCount++;
+            return true;
+        }
+
+        synchronized void release() {
+            if (--mRefCount == 0) {
+                mCursor.close();
+            }
+        }
+    }
 
-            positions[left] = pivotPosition;
-            sortKey[left] = pivotValue;
-            isDirs[left] = pivotIsDir;
-            ids[left] = pivotId;
+    private static int getSign(@SortDimension.SortDirection int direction) {
+        switch (direction) {
+            case SortDimension.SORT_DIRECTION_ASCENDING:
+                return 1;
+            case SortDimension.SORT_DIRECTION_DESCENDING:
+                return -1;
+            default:
+                throw new IllegalArgumentException("Unknown sorting direction: " + direction);
         }
     }
 }
@@ -25,6 +25,7 @@ import androidx.test.InstrumentationRegistry;
 import com.android.documentsui.DocsSelectionHelper;
 import com.android.documentsui.FocusManager;
 import com.android.documentsui.Injector;
+import com.android.documentsui.ListingCache;
 import com.android.documentsui.ModelId;
 import com.android.documentsui.SelectionHelpers;
 import com.android.documentsui.archives.ArchivesProvider;
@@ -102,6 +103,7 @@ public class TestEnv {
                 null,       // MessageBuilder is not currently required for tests
                 dialogs,
                 new TestFileTypeLookup(),
+                new ListingCache(context),
                 (roots) -> {},  // not sure why, but java gets angry when I declare roots type.
                 model);
 
@@ -26,6 +26,8 @@ public class TestFeatures implements Features {
     public boolean contentPaging = true;
     public boolean contentRefresh = true;
     public boolean debugSupport = true;
+    public boolean directoryPrefetch = false;
+    public boolean directorySnapshot = false;
     public boolean foldersInSearchResults = true;
     public boolean gestureScale = true;
     public boolean inspector = true;
@@ -62,6 +64,16 @@ public class TestFeatures implements Features {
         return debugSupport;
     }
 
+    @Override
+    public boolean isDirectoryPrefetchEnabled() {
+        return directoryPrefetch;
+    }
+
+    @Override
+    public boolean isDirectorySnapshotEnabled() {
+        return directorySnapshot;
+    }
+
     @Override
     public boolean isFoldersInSearchResultsEnabled() {
         return foldersInSearchResults;
@@ -16,23 +16,44 @@
 
 package com.android.documentsui;
 
+import static com.google.common.truth.Truth.assertThat;
+
 import android.content.ContentProviderClient;
+import android.database.ContentObserver;
+import android.database.DataSetObserver;
 import android.database.MatrixCursor;
+import android.provider.DocumentsContract.Document;
 
+import androidx.recyclerview.widget.ListUpdateCallback;
 import androidx.test.filters.MediumTest;
 import androidx.test.runner.AndroidJUnit4;
 
 import com.android.documentsui.base.DocumentInfo;
+import com.android.documentsui.roots.RootCursorWrapper;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @RunWith(AndroidJUnit4.class)
 @MediumTest
 public class DirectoryResultTest {
 
+    private static final String AUTHORITY = "test_authority";
+
+    private static final String[] COLUMNS = new String[] {
+            RootCursorWrapper.COLUMN_AUTHORITY,
+            Document.COLUMN_DOCUMENT_ID,
+            Document.COLUMN_DISPLAY_NAME,
+            Document.COLUMN_SIZE,
+            Document.COLUMN_MIME_TYPE
+    };
+
     private ContentProviderClient mClient;
     private MatrixCursor mCursor;
 
@@ -56,4 +77,251 @@ public class DirectoryResultTest {
         Mockito.verify(mClient).close();
         Mockito.verify(mCursor).close();
     }
+
+    @Test
+    public void testIsStale() {
+        DirectoryResult result = createResult(file("a", 1), file("b", 1));
+
+        assertThat(result.isStale()).isFalse();
+    }
+
+    @Test
+    public void testIsStale_afterCursorClosed() {
+        DirectoryResult result = createResult(file("a", 1));
+
+        result.getCursor().close();
+
+        assertThat(result.isStale()).isTrue();
+    }
+
+    @Test
+    public void testIsStale_afterClose() {
+        DirectoryResult result = createResult(file("a", 1));
+
+        result.close();
+
+        assertThat(result.isStale()).isTrue();
+    }
+
+    @Test
+    public void testIsStale_afterContentChanged() {
+        DirectoryResult result = new DirectoryResult();
+        result.setCursor(mCursor);
+        ArgumentCaptor<ContentObserver> observer = ArgumentCaptor.forClass(ContentObserver.class);
+        Mockito.verify(mCursor).registerContentObserver(observer.capture());
+
+        assertThat(result.isStale()).isFalse();
+        observer.getValue().onChange(false);
+
+        assertThat(result.isStale()).isTrue();
+    }
+
+    @Test
+    public void testIsStale_whenRowsUnreadable() {
+        Mockito.when(mCursor.getCount()).thenReturn(2);
+        Mockito.when(mCursor.moveToNext()).thenThrow(new IllegalStateException());
+        DirectoryResult result = new DirectoryResult();
+        result.setCursor(mCursor);
+
+        assertThat(result.isStale()).isTrue();
+    }
+
+    @Test
+    public void testIsStale_afterProviderDied() {
+        DyingCursor cursor = new DyingCursor();
+        cursor.addRow(file("a", 1));
+        cursor.addRow(file("b", 1));
+        DirectoryResult result = new DirectoryResult();
+        result.setCursor(cursor);
+        assertThat(result.isStale()).isFalse();
+
+        cursor.died = true;
+
+        assertThat(result.isStale()).isTrue();
+        cursor.died = false;
+        assertThat(result.isStale()).isTrue();
+    }
+
+    @Test
+    public void testIsStale_readsOnlyFirstAndLastRows() {
+        Mockito.when(mCursor.getCount()).thenReturn(1000);
+        Mockito.when(mCursor.moveToNext()).thenReturn(true);
+        Mockito.when(mCursor.moveToFirst()).thenReturn(true);
+        Mockito.when(mCursor.moveToLast()).thenReturn(true);
+        DirectoryResult result = new DirectoryResult();
+        result.setCursor(mCursor);
+        Mockito.clearInvocations(mCursor);
+
+        assertThat(result.isStale()).isFalse();
+
+        Mockito.verify(mCursor).getCount();
+        Mockito.verify(mCursor).moveToFirst();
+        Mockito.verify(mCursor).moveToLast();
+        Mockito.verifyNoMoreInteractions(mCursor);
+    }
+
+    @Test
+    public void testClose_unregistersObservers() {
+        DirectoryResult result = new DirectoryResult();
+        result.setCursor(mCursor);
+        ArgumentCaptor<ContentObserver> observer = ArgumentCaptor.forClass(ContentObserver.class);
+        ArgumentCaptor<DataSetObserver> dataSetObserver =
+                ArgumentCaptor.forClass(DataSetObserver.class);
+        Mockito.verify(mCursor).registerContentObserver(observer.capture());
+        Mockito.verify(mCursor).registerDataSetObserver(dataSetObserver.capture());
+
+        result.close();
+
+        Mockito.verify(mCursor).unregisterContentObserver(observer.getValue());
+        Mockito.verify(mCursor).unregisterDataSetObserver(dataSetObserver.getValue());
+    }
+
+    @Test
+    public void testDiffFrom_dispatchesGranularChanges() {
+        DirectoryResult previous = createResult(file("a", 1), file("b", 1), file("c", 1));
+        DirectoryResult result = createResult(file("a", 1), file("c", 2), file("d", 1));
+
+        result.diffFrom(previous);
+
+        RecordingCallback callback = new RecordingCallback(3);
+        result.getDiff().dispatchUpdatesTo(callback);
+        assertThat(callback.rows).containsExactly("old", "changed", "new").inOrder();
+        assertThat(result.getDiffBase()).isSameInstanceAs(previous.getModelIds());
+    }
+
+    @Test
+    public void testDiffFrom_keepsSectionBreak() {
+        DirectoryResult previous = createResult(dir("a"), file("b", 1));
+        DirectoryResult result = createResult(dir("a"), dir("c"), file("b", 1));
+
+        result.diffFrom(previous);
+
+        // Rows are a, break, b before and a, c, break, b after.
+        RecordingCallback callback = new RecordingCallback(3);
+        result.getDiff().dispatchUpdatesTo(callback);
+        assertThat(callback.rows).containsExactly("old", "new", "old", "old").inOrder();
+    }
+
+    @Test
+    public void testDiffFrom_closedPrevious() {
+        DirectoryResult previous = createResult(file("a", 1));
+        DirectoryResult result = createResult(file("a", 1), file("b", 1));
+        previous.close();
+
+        result.diffFrom(previous);
+
+        assertThat(result.getDiff()).isNull();
+    }
+
+    @Test
+    public void testDiffFrom_tooManyEdits() {
+        Object[][] oldRows = new Object[1001][];
+        Object[][] newRows = new Object[1001][];
+        for (int i = 0; i < oldRows.length; i++) {
+            oldRows[i] = file("old" + i, 1);
+            newRows[i] = file("new" + i, 1);
+        }
+        DirectoryResult result = createResult(newRows);
+
+        result.diffFrom(createResult(oldRows));
+
+        assertThat(result.getDiff()).isNull();
+    }
+
+    @Test
+    public void testSetExtendedCursor_appendsRows() {
+        DirectoryResult previous = createResult(dir("b"), file("c", 1));
+        DirectoryResult expected = createResult(dir("a"), dir("b"), file("c", 1), file("d", 1));
+
+        DirectoryResult result = new DirectoryResult();
+        result.setExtendedCursor(
+                createCursor(dir("a"), dir("b"), file("c", 1), file("d", 1)),
+                previous, new int[] { -1, 0, 1, -1 });
+        result.diffFrom(previous);
+
+        assertThat(result.getModelIds()).isEqualTo(expected.getModelIds());
+        assertThat(result.getFileNames()).containsExactly("a", "b", "c", "d");
+        assertThat(result.getPositions()).isEqualTo(expected.getPositions());
+
+        // Rows are b, break, c before and a, b, break, c, d after.
+        RecordingCallback callback = new RecordingCallback(3);
+        result.getDiff().dispatchUpdatesTo(callback);
+        assertThat(callback.rows).containsExactly("new", "old", "old", "old", "new").inOrder();
+    }
+
+    private static DirectoryResult createResult(Object[]... rows) {
+        DirectoryResult result = new DirectoryResult();
+        result.setCursor(createCursor(rows));
+        return result;
+    }
+
+    private static MatrixCursor createCursor(Object[]... rows) {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        for (Object[] row : rows) {
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    private static Object[] file(String id, long size) {
+        return new Object[] { AUTHORITY, id, id, size, "text/plain" };
+    }
+
+    private static Object[] dir(String id) {
+        return new Object[] { AUTHORITY, id, id, 0L, Document.MIME_TYPE_DIR };
+    }
+
+    /** A cursor whose rows can't be moved to once its provider died, like a remote cursor. */
+    private static final class DyingCursor extends MatrixCursor {
+        boolean died;
+
+        DyingCursor() {
+            super(COLUMNS);
+        }
+
+        @Override
+        public boolean onMove(int oldPosition, int newPosition) {
+            if (died) {
+                throw new IllegalStateException("Provider died");
+            }
+            return super.onMove(oldPosition, newPosition);
+        }
+    }
+
+    /** Applies list updates to a list of "old" rows. */
+    private static final class RecordingCallback implements ListUpdateCallback {
+        final List<String> rows = new ArrayList<>();
+
+        RecordingCallback(int oldSize) {
+            for (int i = 0; i < oldSize; i++) {
+                rows.add("old");
+            }
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            for (int i = 0; i < count; i++) {
+                rows.add(position, "new");
+            }
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            for (int i = 0; i < count; i++) {
+                rows.remove(position);
+            }
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            rows.add(toPosition, rows.remove(fromPosition));
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            for (int i = 0; i < count; i++) {
+                rows.set(position + i, "changed");
+            }
+        }
+    }
 }
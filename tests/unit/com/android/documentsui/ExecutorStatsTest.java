@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class ExecutorStatsTest {
+
+    private static final String EXECUTOR = "stats_test_authority";
+
+    @Before
+    public void setUp() {
+        ExecutorStats.reset();
+    }
+
+    @After
+    public void tearDown() {
+        ExecutorStats.reset();
+    }
+
+    @Test
+    public void testWrap_recordsRun() {
+        final boolean[] ran = new boolean[1];
+        final Runnable wrapped = ExecutorStats.wrap(EXECUTOR, "listing", () -> ran[0] = true);
+
+        assertThat(dump()).isEmpty();
+        wrapped.run();
+
+        assertTrue(ran[0]);
+        assertThat(dump()).hasSize(1);
+        assertThat(dump().get(0)).startsWith(EXECUTOR + " [listing]: 1 run,");
+    }
+
+    @Test
+    public void testExecute_recordsRejection() {
+        final Executor rejecting = command -> {
+            throw new RejectedExecutionException();
+        };
+
+        try {
+            ExecutorStats.execute(rejecting, EXECUTOR, "listing", () -> {});
+            fail("Expected rejection");
+        } catch (RejectedExecutionException expected) {
+        }
+
+        assertThat(dump().get(0)).contains("1 rejected");
+    }
+
+    @Test
+    public void testRecord_keepsTypesApart() {
+        ExecutorStats.record(EXECUTOR, "listing", 10, 20);
+        ExecutorStats.record(EXECUTOR, "listing", 30, 40);
+        ExecutorStats.record(EXECUTOR, "visible thumbnail", 1, 2);
+        ExecutorStats.recordPreempted(EXECUTOR, "speculative");
+
+        assertThat(dump()).containsExactly(
+                EXECUTOR + " [listing]: 2 run, wait avg 20ms max 30ms, run avg 30ms max 40ms,"
+                        + " 0 rejected, 0 preempted",
+                EXECUTOR + " [speculative]: 0 run, wait avg 0ms max 0ms, run avg 0ms max 0ms,"
+                        + " 0 rejected, 1 preempted",
+                EXECUTOR + " [visible thumbnail]: 1 run, wait avg 1ms max 1ms,"
+                        + " run avg 2ms max 2ms, 0 rejected, 0 preempted").inOrder();
+    }
+
+    // Only the lines of this test, as other tests may leave tasks running on executors.
+    private static List<String> dump() {
+        final List<String> lines = new ArrayList<>();
+        for (String line : ExecutorStats.dump()) {
+            if (line.startsWith(EXECUTOR + " [")) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class FileTypeMapTest {
+
+    private int mLookups;
+    private String mSuffix;
+    private FileTypeMap mMap;
+
+    @Before
+    public void setUp() {
+        mLookups = 0;
+        mSuffix = " file";
+        mMap = new FileTypeMap(mimeType -> {
+            mLookups++;
+            return mimeType + mSuffix;
+        });
+    }
+
+    @Test
+    public void testLookup_memoizes() {
+        assertEquals("image/png file", mMap.lookup("image/png"));
+        assertEquals("image/png file", mMap.lookup("image/png"));
+        assertEquals("text/plain file", mMap.lookup("text/plain"));
+
+        assertEquals(2, mLookups);
+        assertEquals(1, mMap.getHitCount());
+        assertEquals(2, mMap.getMissCount());
+    }
+
+    @Test
+    public void testLookup_null() {
+        assertNull(mMap.lookup(null));
+        assertEquals(0, mLookups);
+    }
+
+    @Test
+    public void testInvalidate() {
+        mMap.lookup("image/png");
+        mSuffix = " datei";
+        mMap.invalidate();
+
+        assertEquals("image/png datei", mMap.lookup("image/png"));
+        assertEquals(2, mLookups);
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ComponentCallbacks2;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.provider.DocumentsContract;
+import android.provider.DocumentsContract.Document;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.documentsui.base.SnapshotCursor;
+import com.android.documentsui.base.UserId;
+import com.android.documentsui.roots.RootCursorWrapper;
+import com.android.documentsui.sorting.SortDimension;
+import com.android.documentsui.sorting.SortModel;
+import com.android.documentsui.testing.SortModels;
+import com.android.documentsui.testing.TestFileTypeLookup;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class ListingCacheTest {
+
+    private static final String AUTHORITY = "test_authority";
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private static final String[] COLUMNS = new String[] {
+            RootCursorWrapper.COLUMN_AUTHORITY,
+            Document.COLUMN_DOCUMENT_ID,
+            Document.COLUMN_DISPLAY_NAME,
+            Document.COLUMN_MIME_TYPE
+    };
+
+    private ContentResolver mResolver;
+    private ListingCache mCache;
+    private ContentLock mLock;
+    private SortModel mSortModel;
+
+    @Before
+    public void setUp() {
+        final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mResolver = context.getContentResolver();
+        mCache = new ListingCache(context);
+        mLock = new ContentLock();
+        mSortModel = SortModels.createTestSortModel();
+        mSortModel.sortByUser(
+                SortModel.SORT_DIMENSION_ID_TITLE, SortDimension.SORT_DIRECTION_ASCENDING);
+    }
+
+    @Test
+    public void testGet_returnsCachedRows() {
+        DirectoryResult result = createResult(new ObservableCursor(), "b", "a");
+        mCache.put(key("dir"), result, mLock);
+        String[] ids = result.getModelIds();
+        result.close();
+
+        DirectoryResult cached = mCache.get(key("dir"));
+
+        assertThat(cached.getModelIds()).isEqualTo(ids);
+        assertThat(cached.getCursor().getCount()).isEqualTo(2);
+        assertThat(cached.getCursor().isClosed()).isFalse();
+    }
+
+    @Test
+    public void testGet_otherKey() {
+        mCache.put(key("dir"), createResult(new ObservableCursor(), "a"), mLock);
+
+        assertThat(mCache.get(key("other"))).isNull();
+        assertThat(mCache.get(new ListingCache.Key(UserId.DEFAULT_USER, uri("dir"),
+                SortModel.SORT_DIMENSION_ID_TITLE, SortDimension.SORT_DIRECTION_DESCENDING,
+                false, null))).isNull();
+    }
+
+    @Test
+    public void testPut_doesNotKeepCursorOpen() {
+        ObservableCursor cursor = new ObservableCursor();
+        try (DirectoryResult result = createResult(cursor, "b", "a")) {
+            mCache.put(key("dir"), result, mLock);
+        }
+
+        assertThat(cursor.isClosed()).isTrue();
+        try (DirectoryResult cached = mCache.get(key("dir"))) {
+            assertThat(cached.getCursor().getCount()).isEqualTo(2);
+            assertThat(cached.getCursor().moveToFirst()).isTrue();
+            assertThat(cached.getCursor().getString(
+                    cached.getCursor().getColumnIndex(Document.COLUMN_DOCUMENT_ID)))
+                    .isEqualTo("a");
+        }
+    }
+
+    @Test
+    public void testPut_rowsNotInMemory_notCached() {
+        DirectoryResult result = new DirectoryResult();
+        result.setCursor(mSortModel.sortCursor(
+                createCursor(new ObservableCursor(), "a"), new TestFileTypeLookup()));
+
+        mCache.put(key("dir"), result, mLock);
+
+        assertThat(mCache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testPut_unsortedRows_notCached() {
+        DirectoryResult result = new DirectoryResult();
+        result.setCursor(createCursor(new ObservableCursor(), "a"));
+
+        mCache.put(key("dir"), result, mLock);
+
+        assertThat(mCache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testPut_evictsLeastRecentlyUsed() {
+        for (int i = 0; i < ListingCache.MAX_ENTRIES + 1; i++) {
+            try (DirectoryResult result = createResult(new ObservableCursor(), "a")) {
+                mCache.put(key("dir" + i), result, mLock);
+            }
+            if (i == ListingCache.MAX_ENTRIES - 1) {
+                mCache.get(key("dir0")).close();
+            }
+        }
+
+        assertThat(mCache.size()).isEqualTo(ListingCache.MAX_ENTRIES);
+        assertThat(mCache.contains(key("dir0"))).isTrue();
+        assertThat(mCache.contains(key("dir1"))).isFalse();
+    }
+
+    @Test
+    public void testContentChange_invalidates() {
+        ObservableCursor cursor = new ObservableCursor();
+        cursor.setNotificationUri(mResolver, uri("dir"));
+        try (DirectoryResult result = createResult(cursor, "a")) {
+            mCache.put(key("dir"), result, mLock);
+        }
+
+        // The cached rows outlive the cursor, and are told of changes by the resolver.
+        mResolver.notifyChange(uri("dir"), null, false);
+        final long deadline = SystemClock.uptimeMillis() + TIMEOUT_MILLIS;
+        do {
+            InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        } while (mCache.contains(key("dir")) && SystemClock.uptimeMillis() < deadline);
+
+        assertThat(mCache.get(key("dir"))).isNull();
+    }
+
+    @Test
+    public void testPrefetchCounts() {
+        try (DirectoryResult result = createResult(new ObservableCursor(), "a")) {
+            mCache.putPrefetched(key("dir"), result, mLock);
+            mCache.putPrefetched(key("other"), result, mLock);
+        }
+        assertThat(mCache.contains(key("dir"))).isTrue();
+        assertThat(mCache.getHitCount()).isEqualTo(0);
+
+        mCache.get(key("dir")).close();
+        mCache.get(key("dir")).close();
+        assertThat(mCache.get(key("missing"))).isNull();
+
+        assertThat(mCache.getPrefetchCount()).isEqualTo(2);
+        assertThat(mCache.getPrefetchHitCount()).isEqualTo(1);
+        assertThat(mCache.getHitCount()).isEqualTo(2);
+        assertThat(mCache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testOnTrimMemory() {
+        try (DirectoryResult result = createResult(new ObservableCursor(), "a")) {
+            mCache.put(key("dir"), result, mLock);
+        }
+
+        mCache.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertThat(mCache.size()).isEqualTo(1);
+
+        mCache.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+        assertThat(mCache.size()).isEqualTo(0);
+    }
+
+    private DirectoryResult createResult(ObservableCursor cursor, String... ids) {
+        DirectoryResult result = new DirectoryResult();
+        result.setCursor(mSortModel.sortCursor(
+                SnapshotCursor.copyOf(createCursor(cursor, ids)), new TestFileTypeLookup()));
+        return result;
+    }
+
+    private static MatrixCursor createCursor(ObservableCursor cursor, String... ids) {
+        for (String id : ids) {
+            cursor.addRow(new Object[] { AUTHORITY, id, id, "text/plain" });
+        }
+        return cursor;
+    }
+
+    private ListingCache.Key key(String documentId) {
+        return new ListingCache.Key(UserId.DEFAULT_USER, uri(documentId),
+                mSortModel.getSortedDimensionId(), mSortModel.getCurrentSortDirection(),
+                false, null);
+    }
+
+    private static Uri uri(String documentId) {
+        return DocumentsContract.buildChildDocumentsUri(AUTHORITY, documentId);
+    }
+
+    private static final class ObservableCursor extends MatrixCursor {
+        ObservableCursor() {
+            super(COLUMNS);
+        }
+    }
+}
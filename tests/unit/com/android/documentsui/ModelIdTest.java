@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.database.MatrixCursor;
+import android.provider.DocumentsContract.Document;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.documentsui.base.UserId;
+import com.android.documentsui.roots.RootCursorWrapper;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class ModelIdTest {
+
+    private static final String[] COLUMNS = new String[] {
+            RootCursorWrapper.COLUMN_USER_ID,
+            RootCursorWrapper.COLUMN_AUTHORITY,
+            Document.COLUMN_DOCUMENT_ID
+    };
+
+    @Test
+    public void testBuilder_matchesBuild() {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        cursor.addRow(new Object[] { 0, "auth0", "1" });
+        cursor.addRow(new Object[] { 0, "auth0", "2" });
+        cursor.addRow(new Object[] { 10, "auth0", "1" });
+        cursor.addRow(new Object[] { 10, "auth1", "1" });
+        cursor.addRow(new Object[] { 0, "auth0", "3" });
+
+        ModelId.Builder builder = new ModelId.Builder(cursor);
+        while (cursor.moveToNext()) {
+            String expected = ModelId.build(UserId.of(cursor.getInt(0)), cursor.getString(1),
+                    cursor.getString(2));
+            assertThat(builder.build()).isEqualTo(expected);
+            assertThat(ModelId.build(cursor)).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void testBuilder_missingValues() {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        cursor.addRow(new Object[] { 0, null, "1" });
+        cursor.addRow(new Object[] { 0, "auth0", "" });
+
+        ModelId.Builder builder = new ModelId.Builder(cursor);
+        while (cursor.moveToNext()) {
+            assertThat(builder.build()).isNull();
+        }
+    }
+
+    @Test
+    public void testBuilder_missingUserIdColumn() {
+        MatrixCursor cursor = new MatrixCursor(new String[] {
+                RootCursorWrapper.COLUMN_AUTHORITY, Document.COLUMN_DOCUMENT_ID });
+        cursor.addRow(new Object[] { "auth0", "1" });
+        cursor.moveToFirst();
+
+        assertThat(new ModelId.Builder(cursor).build())
+                .isEqualTo(ModelId.build(UserId.of(0), "auth0", "1"));
+    }
+}
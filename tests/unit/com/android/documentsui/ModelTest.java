@@ -17,11 +17,16 @@
 package com.android.documentsui;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
 import static junit.framework.Assert.fail;
 
+import android.content.ContentResolver;
 import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.database.MergeCursor;
+import android.os.Bundle;
 import android.provider.DocumentsContract.Document;
 
 import androidx.test.filters.SmallTest;
@@ -172,6 +177,69 @@ public class ModelTest {
         }
     }
 
+    @Test
+    public void testGetPositions() {
+        String[] ids = model.getModelIds();
+        assertEquals(ITEM_COUNT, model.getPositions().size());
+        for (int i = 0; i < ITEM_COUNT; ++i) {
+            assertEquals(i, (int) model.getPositions().get(ids[i]));
+        }
+    }
+
+    @Test
+    public void testGetPositions_clearedAfterGettingException() {
+        DirectoryResult result = new DirectoryResult();
+        result.exception = new Exception();
+
+        model.update(result);
+
+        assertEquals(0, model.getPositions().size());
+    }
+
+    @Test
+    public void testUpdate_largeResult_swapsPrebuiltIndexes() {
+        MoveCountingCursor c = new MoveCountingCursor(COLUMNS);
+        for (int i = 0; i < 100_000; ++i) {
+            MatrixCursor.RowBuilder row = c.newRow();
+            row.add(RootCursorWrapper.COLUMN_AUTHORITY, AUTHORITY);
+            row.add(Document.COLUMN_DOCUMENT_ID, Integer.toString(i));
+            row.add(Document.COLUMN_DISPLAY_NAME, "name" + i);
+        }
+        DirectoryResult r = new DirectoryResult();
+        r.setCursor(c);
+
+        c.moves = 0;
+        model.update(r);
+
+        // The indexes are built off the main thread, so update() only swaps them in, without
+        // reading a single row.
+        assertEquals(0, c.moves);
+        assertSame(r.getPositions(), model.getPositions());
+        assertTrue(model.hasFileWithName("name99999"));
+    }
+
+    @Test
+    public void testPagedListing() {
+        Bundle extras = new Bundle();
+        extras.putInt(ContentResolver.EXTRA_TOTAL_COUNT, 1000);
+        extras.putBoolean(Model.EXTRA_HAS_MORE_PAGES, true);
+        ((MatrixCursor) cursor).setExtras(extras);
+        DirectoryResult r = new DirectoryResult();
+        r.setCursor(cursor);
+
+        model.update(r);
+
+        assertEquals(ITEM_COUNT, model.getItemCount());
+        assertEquals(1000, model.getTotalCount());
+        assertTrue(model.hasMorePages());
+    }
+
+    @Test
+    public void testUnpagedListing() {
+        assertEquals(-1, model.getTotalCount());
+        assertFalse(model.hasMorePages());
+    }
+
     @Test
     public void testResetAfterGettingException() {
         DirectoryResult result = new DirectoryResult();
@@ -181,4 +249,19 @@ public class ModelTest {
 
         assertEquals(0, model.getItemCount());
     }
+
+    /** Counts the moves of the cursor, which are how its rows are read. */
+    private static final class MoveCountingCursor extends MatrixCursor {
+        int moves;
+
+        MoveCountingCursor(String[] columnNames) {
+            super(columnNames);
+        }
+
+        @Override
+        public boolean moveToPosition(int position) {
+            moves++;
+            return super.moveToPosition(position);
+        }
+    }
 }
@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.junit.Assert.assertTrue;
+
+import android.os.AsyncTask;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class ProviderExecutorTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    @Test
+    public void testForAuthority_returnsSameExecutor() {
+        assertThat(ProviderExecutor.forAuthority("same"))
+                .isSameInstanceAs(ProviderExecutor.forAuthority("same"));
+    }
+
+    @Test
+    public void testExecute_runsInOrder() throws Exception {
+        final ProviderExecutor executor = ProviderExecutor.forAuthority("ordered");
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch done = new CountDownLatch(1);
+
+        for (int i = 0; i < 20; i++) {
+            final int task = i;
+            executor.execute(() -> order.add(task));
+        }
+        executor.execute(done::countDown);
+
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        for (int i = 0; i < 20; i++) {
+            assertThat(order.get(i)).isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void testExecute_authoritiesRunConcurrently() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch ran = new CountDownLatch(1);
+        ProviderExecutor.forAuthority("blocked").execute(() -> {
+            try {
+                blocked.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        ProviderExecutor.forAuthority("other").execute(ran::countDown);
+
+        assertTrue(ran.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        blocked.countDown();
+    }
+
+    @Test
+    public void testExecute_listingRunsWhilePoolIsBusy() throws Exception {
+        final List<CountDownLatch> blocked = new ArrayList<>();
+        try {
+            for (int i = 0; i < ProviderExecutor.MAX_THREADS; i++) {
+                blocked.add(block(ProviderExecutor.forAuthority("hung" + i)));
+            }
+            final CountDownLatch ran = new CountDownLatch(1);
+
+            ProviderExecutor.forAuthority("responsive").execute(ran::countDown);
+
+            assertTrue(ran.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        } finally {
+            for (CountDownLatch latch : blocked) {
+                latch.countDown();
+            }
+        }
+    }
+
+    @Test
+    public void testExecute_boundsThreadsWhenPoolIsBusy() throws Exception {
+        final List<CountDownLatch> blocked = new ArrayList<>();
+        final CountDownLatch released = new CountDownLatch(1);
+        final int slowListings = ProviderExecutor.MAX_OVERFLOW_THREADS * 4;
+        final CountDownLatch ran = new CountDownLatch(slowListings);
+        try {
+            for (int i = 0; i < ProviderExecutor.MAX_THREADS; i++) {
+                blocked.add(block(ProviderExecutor.forAuthority("saturated" + i)));
+            }
+
+            for (int i = 0; i < slowListings; i++) {
+                ProviderExecutor.forAuthority("slow" + i).execute(() -> {
+                    try {
+                        released.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    ran.countDown();
+                });
+            }
+
+            assertThat(countExecutorThreads()).isAtMost(
+                    ProviderExecutor.MAX_THREADS + ProviderExecutor.MAX_OVERFLOW_THREADS);
+        } finally {
+            released.countDown();
+            for (CountDownLatch latch : blocked) {
+                latch.countDown();
+            }
+        }
+        // The listings that found no thread run once the pool frees up.
+        assertTrue(ran.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testExecute_runsByPriority() throws Exception {
+        final ProviderExecutor executor = ProviderExecutor.forAuthority("priorities");
+        final CountDownLatch blocked = block(executor);
+        final List<String> order = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch done = new CountDownLatch(3);
+
+        executor.execute(ProviderExecutor.PRIORITY_SPECULATIVE,
+                new RecordingTask("speculative", order, done));
+        executor.execute(ProviderExecutor.PRIORITY_VISIBLE_THUMBNAIL,
+                new RecordingTask("thumbnail", order, done));
+        executor.execute(ProviderExecutor.PRIORITY_LISTING,
+                new RecordingTask("listing", order, done));
+        blocked.countDown();
+
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertThat(order).containsExactly("listing", "thumbnail", "speculative").inOrder();
+    }
+
+    @Test
+    public void testExecute_runsNewestThumbnailFirst() throws Exception {
+        final ProviderExecutor executor = ProviderExecutor.forAuthority("thumbnails");
+        final CountDownLatch blocked = block(executor);
+        final List<String> order = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch done = new CountDownLatch(3);
+
+        for (String name : new String[] { "first", "second", "third" }) {
+            executor.execute(ProviderExecutor.PRIORITY_VISIBLE_THUMBNAIL,
+                    new RecordingTask(name, order, done));
+        }
+        blocked.countDown();
+
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertThat(order).containsExactly("third", "second", "first").inOrder();
+    }
+
+    @Test
+    public void testExecute_lowerPriorityNotStarved() throws Exception {
+        final ProviderExecutor executor = ProviderExecutor.forAuthority("starved");
+        final CountDownLatch blocked = block(executor);
+        final List<String> order = Collections.synchronizedList(new ArrayList<>());
+        final int listings = ProviderExecutor.MAX_PASSED_OVER * 2;
+        final CountDownLatch done = new CountDownLatch(listings + 1);
+
+        executor.execute(ProviderExecutor.PRIORITY_OFFSCREEN_THUMBNAIL,
+                new RecordingTask("thumbnail", order, done));
+        for (int i = 0; i < listings; i++) {
+            executor.execute(ProviderExecutor.PRIORITY_LISTING,
+                    new RecordingTask("listing", order, done));
+        }
+        blocked.countDown();
+
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertThat(order.indexOf("thumbnail")).isEqualTo(ProviderExecutor.MAX_PASSED_OVER);
+    }
+
+    @Test
+    public void testExecute_preemptsSpeculativeTasksOnly() throws Exception {
+        final ProviderExecutor executor = ProviderExecutor.forAuthority("preempt");
+        final CountDownLatch blocked = block(executor);
+        final List<String> order = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch done = new CountDownLatch(2);
+        final PreemptableTask speculative = new PreemptableTask("speculative", order, done);
+        final PreemptableTask thumbnail = new PreemptableTask("thumbnail", order, done);
+
+        executor.execute(ProviderExecutor.PRIORITY_SPECULATIVE, speculative);
+        executor.execute(ProviderExecutor.PRIORITY_VISIBLE_THUMBNAIL, thumbnail);
+        executor.execute(new RecordingTask("listing", order, done));
+        blocked.countDown();
+
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertThat(speculative.isCancelled()).isTrue();
+        assertThat(thumbnail.isCancelled()).isFalse();
+        assertThat(order).containsExactly("listing", "thumbnail").inOrder();
+    }
+
+    @Test
+    public void testGetQueueDepth() throws Exception {
+        final ProviderExecutor executor = ProviderExecutor.forAuthority("depth");
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                blocked.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        executor.execute(done::countDown);
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        assertThat(executor.getQueueDepth()).isEqualTo(2);
+        assertThat(ProviderExecutor.getQueueDepths()).containsEntry("depth", 2);
+
+        blocked.countDown();
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    /** Keeps the executor busy until the returned latch is counted down. */
+    private static CountDownLatch block(ProviderExecutor executor) throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                blocked.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        return blocked;
+    }
+
+    private static int countExecutorThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && thread.getName().startsWith("ProviderExecutor")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static class RecordingTask extends AsyncTask<Void, Void, Void> {
+        private final String mName;
+        private final List<String> mOrder;
+        private final CountDownLatch mDone;
+
+        RecordingTask(String name, List<String> order, CountDownLatch done) {
+            mName = name;
+            mOrder = order;
+            mDone = done;
+        }
+
+        @Override
+        protected Void doInBackground(Void... params) {
+            mOrder.add(mName);
+            mDone.countDown();
+            return null;
+        }
+    }
+
+    private static final class PreemptableTask extends RecordingTask
+            implements ProviderExecutor.Preemptable {
+        PreemptableTask(String name, List<String> order, CountDownLatch done) {
+            super(name, order, done);
+        }
+
+        @Override
+        public void preempt() {
+            cancel(false);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class ProviderLatenciesTest {
+
+    private ProviderLatencies mLatencies;
+
+    @Before
+    public void setUp() {
+        mLatencies = new ProviderLatencies();
+    }
+
+    @Test
+    public void testGetEstimate_unknownAuthority() {
+        assertThat(mLatencies.getEstimate("a", 500)).isEqualTo(500);
+    }
+
+    @Test
+    public void testGetEstimate_steadyLatency() {
+        for (int i = 0; i < 50; i++) {
+            mLatencies.record("a", 100);
+        }
+
+        assertThat(mLatencies.getEstimate("a", 500)).isAtLeast(100L);
+        assertThat(mLatencies.getEstimate("a", 500)).isAtMost(101L);
+    }
+
+    @Test
+    public void testGetEstimate_followsChanges() {
+        mLatencies.record("a", 100);
+        final long before = mLatencies.getEstimate("a", 500);
+        for (int i = 0; i < 10; i++) {
+            mLatencies.record("a", 1000);
+        }
+
+        assertThat(mLatencies.getEstimate("a", 500)).isGreaterThan(before);
+    }
+
+    @Test
+    public void testGetEstimate_coversJitter() {
+        for (int i = 0; i < 50; i++) {
+            mLatencies.record("a", i % 2 == 0 ? 100 : 300);
+        }
+
+        assertThat(mLatencies.getEstimate("a", 500)).isAtLeast(300L);
+    }
+
+    @Test
+    public void testGetPercentile() {
+        mLatencies.record("fast", 10);
+        mLatencies.record("slow", 1000);
+
+        assertThat(mLatencies.getPercentile(Arrays.asList("fast", "slow", "new"), 0.5f, 200))
+                .isEqualTo(200);
+        assertThat(mLatencies.getPercentile(Collections.singletonList("fast"), 0.75f, 200))
+                .isEqualTo(20);
+        assertThat(mLatencies.getPercentile(Collections.emptyList(), 0.75f, 200))
+                .isEqualTo(200);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.base;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.database.MatrixCursor;
+import android.provider.DocumentsContract.Document;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class FilteringCursorWrapperTest {
+
+    private static final String[] COLUMNS = new String[] {
+            Document.COLUMN_DOCUMENT_ID,
+            Document.COLUMN_DISPLAY_NAME,
+            Document.COLUMN_MIME_TYPE,
+            Document.COLUMN_LAST_MODIFIED
+    };
+
+    private MatrixCursor mSource;
+
+    @Before
+    public void setUp() {
+        mSource = new MatrixCursor(COLUMNS);
+        mSource.addRow(new Object[] { "1", "a.jpg", "image/jpeg", 100L });
+        mSource.addRow(new Object[] { "2", ".hidden", "image/jpeg", 100L });
+        mSource.addRow(new Object[] { "3", "b.txt", "text/plain", 100L });
+        mSource.addRow(new Object[] { "4", "c.png", "image/png", 10L });
+        mSource.addRow(new Object[] { "dir/.5", "d.png", "image/png", 100L });
+        mSource.addRow(new Object[] { "6", "e.png", "image/png", null });
+    }
+
+    @Test
+    public void testNoFilters() {
+        final FilteringCursorWrapper cursor = new FilteringCursorWrapper(mSource);
+
+        assertThat(ids(cursor)).containsExactly("1", "2", "3", "4", "dir/.5", "6").inOrder();
+    }
+
+    @Test
+    public void testAllFilters() {
+        final FilteringCursorWrapper cursor = new FilteringCursorWrapper(mSource);
+        cursor.filterHiddenFiles(false);
+        cursor.filterMimes(new String[] { "image/*" }, null);
+        cursor.filterLastModified(50);
+
+        assertThat(ids(cursor)).containsExactly("1").inOrder();
+        assertThat(cursor.getRejectedCounts()).containsExactly(
+                "hidden", 2, "mimes", 1, "lastModified", 2).inOrder();
+    }
+
+    @Test
+    public void testShowHiddenFiles() {
+        final FilteringCursorWrapper cursor = new FilteringCursorWrapper(mSource);
+        cursor.filterHiddenFiles(true);
+        cursor.filterMimes(null, new String[] { "text/plain" });
+
+        assertThat(ids(cursor)).containsExactly("1", "2", "4", "dir/.5", "6").inOrder();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAddFilterAfterRead() {
+        final FilteringCursorWrapper cursor = new FilteringCursorWrapper(mSource);
+        cursor.getCount();
+
+        cursor.filterLastModified(50);
+    }
+
+    private static List<String> ids(FilteringCursorWrapper cursor) {
+        final List<String> ids = new ArrayList<>();
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            ids.add(DocumentInfo.getCursorString(cursor, Document.COLUMN_DOCUMENT_ID));
+        }
+        return ids;
+    }
+}
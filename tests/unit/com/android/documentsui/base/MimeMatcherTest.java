@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.base;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import android.provider.DocumentsContract.Document;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class MimeMatcherTest {
+
+    private static final String[][] FILTERS = new String[][] {
+            null,
+            {},
+            { "*/*" },
+            { null },
+            { "image/*" },
+            { "image/*", "video/*" },
+            { "image/png", "text/plain" },
+            { "image/jpeg", "video/*", Document.MIME_TYPE_DIR },
+            { "/*" },
+    };
+
+    private static final String[] TESTS = new String[] {
+            null,
+            "",
+            "image/png",
+            "image/jpeg",
+            "imagex/png",
+            "image",
+            "video/mp4",
+            "text/plain",
+            "text/html",
+            "application/pdf",
+            Document.MIME_TYPE_DIR,
+    };
+
+    @Test
+    public void testMatchesSameAsMimeTypes() {
+        for (String[] filters : FILTERS) {
+            final MimeMatcher matcher = MimeMatcher.compile(filters);
+            for (String test : TESTS) {
+                assertEquals(Arrays.toString(filters) + " vs " + test,
+                        MimeTypes.mimeMatches(filters, test), matcher.matches(test));
+            }
+        }
+    }
+
+    @Test
+    public void testAny() {
+        assertTrue(MimeMatcher.ANY.matches(null));
+        assertTrue(MimeMatcher.ANY.matches("application/pdf"));
+    }
+
+    @Test
+    public void testVisualMimes() {
+        assertTrue(MimeTypes.VISUAL_MIMES_MATCHER.matches("image/png"));
+        assertTrue(MimeTypes.VISUAL_MIMES_MATCHER.matches("video/mp4"));
+        assertFalse(MimeTypes.VISUAL_MIMES_MATCHER.matches("audio/mp3"));
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.base;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Bundle;
+import android.provider.DocumentsContract;
+import android.provider.DocumentsContract.Document;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.documentsui.roots.RootCursorWrapper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.charset.StandardCharsets;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class SnapshotCursorTest {
+
+    private static final String[] COLUMNS = new String[] {
+            Document.COLUMN_DOCUMENT_ID,
+            Document.COLUMN_DISPLAY_NAME,
+            Document.COLUMN_MIME_TYPE,
+            Document.COLUMN_SIZE,
+            Document.COLUMN_LAST_MODIFIED,
+            Document.COLUMN_FLAGS,
+            "custom"
+    };
+
+    private MatrixCursor mSource;
+
+    @Before
+    public void setUp() {
+        mSource = new MatrixCursor(COLUMNS);
+        mSource.addRow(new Object[] { "1", "a.txt", "text/plain", 12L, 1000L, 3, 1.5 });
+        mSource.addRow(new Object[] { "2", "b", Document.MIME_TYPE_DIR, null, null, null, "x" });
+        mSource.addRow(new Object[] { "3", "c.txt", "text/plain", 7L, -1L, 0, null });
+    }
+
+    @Test
+    public void testCopiesAllValues() {
+        final Cursor snapshot = SnapshotCursor.copyOf(mSource);
+
+        assertThat(snapshot.getCount()).isEqualTo(3);
+        assertThat(snapshot.getColumnNames()).isEqualTo(COLUMNS);
+
+        snapshot.moveToPosition(0);
+        assertThat(DocumentInfo.getCursorString(snapshot, Document.COLUMN_DISPLAY_NAME))
+                .isEqualTo("a.txt");
+        assertThat(DocumentInfo.getCursorLong(snapshot, Document.COLUMN_SIZE)).isEqualTo(12L);
+        assertThat(DocumentInfo.getCursorLong(snapshot, Document.COLUMN_LAST_MODIFIED))
+                .isEqualTo(1000L);
+        assertThat(DocumentInfo.getCursorInt(snapshot, Document.COLUMN_FLAGS)).isEqualTo(3);
+        assertThat(snapshot.getDouble(snapshot.getColumnIndex("custom"))).isEqualTo(1.5);
+
+        snapshot.moveToPosition(2);
+        assertThat(DocumentInfo.getCursorLong(snapshot, Document.COLUMN_LAST_MODIFIED))
+                .isEqualTo(-1L);
+        assertThat(snapshot.isNull(snapshot.getColumnIndex("custom"))).isTrue();
+    }
+
+    @Test
+    public void testNullsArePreserved() {
+        final Cursor snapshot = SnapshotCursor.copyOf(mSource);
+
+        snapshot.moveToPosition(1);
+        final int size = snapshot.getColumnIndex(Document.COLUMN_SIZE);
+        assertThat(snapshot.isNull(size)).isTrue();
+        assertThat(snapshot.getType(size)).isEqualTo(Cursor.FIELD_TYPE_NULL);
+        assertThat(snapshot.getString(size)).isNull();
+        assertThat(DocumentInfo.getCursorLong(snapshot, Document.COLUMN_SIZE)).isEqualTo(-1L);
+        assertThat(snapshot.isNull(snapshot.getColumnIndex(Document.COLUMN_FLAGS))).isTrue();
+        assertThat(snapshot.getString(snapshot.getColumnIndex("custom"))).isEqualTo("x");
+    }
+
+    @Test
+    public void testInternsMimeTypes() {
+        final Cursor snapshot = SnapshotCursor.copyOf(mSource);
+        final int mime = snapshot.getColumnIndex(Document.COLUMN_MIME_TYPE);
+
+        snapshot.moveToPosition(0);
+        final String first = snapshot.getString(mime);
+        snapshot.moveToPosition(2);
+        assertThat(snapshot.getString(mime)).isSameInstanceAs(first);
+    }
+
+    @Test
+    public void testCopiesRootColumns() {
+        final Cursor snapshot = SnapshotCursor.copyOf(new RootCursorWrapper(
+                UserId.DEFAULT_USER, "authority", "root", mSource, /* maxCount= */ -1));
+
+        snapshot.moveToPosition(1);
+        assertThat(DocumentInfo.getCursorString(snapshot, RootCursorWrapper.COLUMN_AUTHORITY))
+                .isEqualTo("authority");
+        assertThat(DocumentInfo.getCursorInt(snapshot, RootCursorWrapper.COLUMN_USER_ID))
+                .isEqualTo(UserId.DEFAULT_USER.getIdentifier());
+    }
+
+    @Test
+    public void testReturnsWrappedExtras() {
+        final Bundle extras = new Bundle();
+        extras.putBoolean(DocumentsContract.EXTRA_LOADING, true);
+        mSource.setExtras(extras);
+
+        final Cursor snapshot = SnapshotCursor.copyOf(mSource);
+
+        assertThat(snapshot.getExtras().getBoolean(DocumentsContract.EXTRA_LOADING)).isTrue();
+    }
+
+    @Test
+    public void testConvertsLikeCursorWindow() {
+        final Cursor snapshot = SnapshotCursor.copyOf(mSource);
+        final int name = snapshot.getColumnIndex(Document.COLUMN_DISPLAY_NAME);
+        final int id = snapshot.getColumnIndex(Document.COLUMN_DOCUMENT_ID);
+        final int custom = snapshot.getColumnIndex("custom");
+
+        snapshot.moveToPosition(1);
+        assertThat(snapshot.getLong(name)).isEqualTo(0);
+        assertThat(snapshot.getDouble(name)).isEqualTo(0.0);
+        assertThat(snapshot.getBlob(name)).isEqualTo("b".getBytes(StandardCharsets.UTF_8));
+        assertThat(snapshot.getLong(id)).isEqualTo(2);
+        assertThat(snapshot.getLong(custom)).isEqualTo(0);
+        assertThat(snapshot.getBlob(custom)).isEqualTo("x".getBytes(StandardCharsets.UTF_8));
+
+        snapshot.moveToPosition(2);
+        assertThat(snapshot.getBlob(custom)).isNull();
+    }
+
+    @Test
+    public void testClosesSource() {
+        SnapshotCursor.copyOf(mSource).close();
+
+        assertThat(mSource.isClosed()).isTrue();
+    }
+
+    @Test
+    public void testShare_hasOwnPosition() {
+        SnapshotCursor snapshot = SnapshotCursor.copyOf(mSource);
+        SnapshotCursor shared = snapshot.share();
+        final int name = snapshot.getColumnIndex(Document.COLUMN_DISPLAY_NAME);
+
+        snapshot.moveToPosition(0);
+        shared.moveToPosition(1);
+
+        assertThat(snapshot.getString(name)).isNotEqualTo(shared.getString(name));
+        assertThat(shared.getCount()).isEqualTo(snapshot.getCount());
+    }
+
+    @Test
+    public void testShare_closeLeavesSourceOpen() {
+        SnapshotCursor snapshot = SnapshotCursor.copyOf(mSource);
+
+        snapshot.share().close();
+
+        assertThat(mSource.isClosed()).isFalse();
+        assertThat(snapshot.isClosed()).isFalse();
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.sorting;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.documentsui.sorting.PermutationSorter.IndexComparator;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class PermutationSorterTest {
+
+    @Test
+    public void testSort_empty() {
+        int[] positions = new int[0];
+        PermutationSorter.sort(positions, (lhs, rhs) -> 0);
+        assertEquals(0, positions.length);
+    }
+
+    @Test
+    public void testSort_matchesReference() {
+        final Random rand = new Random(42);
+        for (int count : new int[] { 1, 2, 7, 8, 100, 1000 }) {
+            final long[] keys = new long[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = rand.nextInt(count);
+            }
+
+            final int[] positions = identity(count);
+            PermutationSorter.sort(positions, (lhs, rhs) -> Long.compare(keys[lhs], keys[rhs]));
+
+            final long[] expected = keys.clone();
+            Arrays.sort(expected);
+            for (int i = 0; i < count; i++) {
+                assertEquals(expected[i], keys[positions[i]]);
+            }
+        }
+    }
+
+    @Test
+    public void testSort_isStable() {
+        final int count = 500;
+        final int[] keys = new int[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = i % 3;
+        }
+
+        final int[] positions = identity(count);
+        PermutationSorter.sort(positions, (lhs, rhs) -> Integer.compare(keys[lhs], keys[rhs]));
+
+        for (int i = 1; i < count; i++) {
+            final int prev = positions[i - 1];
+            final int cur = positions[i];
+            assertTrue(keys[prev] < keys[cur] || (keys[prev] == keys[cur] && prev < cur));
+        }
+    }
+
+    @Test
+    public void testSort_range() {
+        final int[] positions = new int[] { 9, 8, 7, 6, 5, 4, 3, 2, 1, 0 };
+        final IndexComparator comparator = Integer::compare;
+
+        PermutationSorter.sort(positions, 2, 8, comparator);
+
+        assertEquals("[9, 8, 2, 3, 4, 5, 6, 7, 1, 0]", Arrays.toString(positions));
+    }
+
+    @Test
+    public void testParallelSort_matchesSequential() {
+        final int count = 100_000;
+        final Random rand = new Random(7);
+        final long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = rand.nextInt(1000);
+        }
+        final IndexComparator comparator = (lhs, rhs) -> Long.compare(keys[lhs], keys[rhs]);
+
+        final int[] sequential = identity(count);
+        PermutationSorter.sort(sequential, comparator);
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final int[] parallel = identity(count);
+            PermutationSorter.parallelSort(parallel, comparator, pool);
+            assertTrue(Arrays.equals(sequential, parallel));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static int[] identity(int count) {
+        final int[] positions = new int[count];
+        for (int i = 0; i < count; i++) {
+            positions[i] = i;
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.documentsui.sorting;
+
+import static com.android.documentsui.base.DocumentInfo.getCursorString;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.MergeCursor;
+import android.provider.DocumentsContract.Document;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.documentsui.base.SnapshotCursor;
+import com.android.documentsui.testing.SortModels;
+import com.android.documentsui.testing.TestFileTypeLookup;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class SortedMergeCursorTest {
+
+    private static final String[] COLUMNS = new String[] {
+            Document.COLUMN_DOCUMENT_ID,
+            Document.COLUMN_DISPLAY_NAME,
+            Document.COLUMN_SIZE,
+            Document.COLUMN_MIME_TYPE
+    };
+
+    private SortModel mSortModel;
+    private TestFileTypeLookup mFileTypeLookup;
+    private Random mRand;
+
+    @Before
+    public void setUp() {
+        mSortModel = SortModels.createTestSortModel();
+        mFileTypeLookup = new TestFileTypeLookup();
+        mRand = new Random(11);
+    }
+
+    @Test
+    public void testMerge_names_matchesSortingMergedCursor() {
+        mSortModel.sortByUser(
+                SortModel.SORT_DIMENSION_ID_TITLE, SortDimension.SORT_DIRECTION_ASCENDING);
+
+        assertMergeMatchesSort(createRun("a", 50), createRun("b", 0), createRun("c", 120));
+    }
+
+    @Test
+    public void testMerge_sizes_descending_matchesSortingMergedCursor() {
+        mSortModel.sortByUser(
+                SortModel.SORT_DIMENSION_ID_SIZE, SortDimension.SORT_DIRECTION_DESCENDING);
+
+        assertMergeMatchesSort(createRun("a", 80), createRun("b", 80), createRun("c", 1));
+    }
+
+    @Test
+    public void testMerge_noRuns() {
+        final Cursor merged = mSortModel.mergeSortedCursors(new Cursor[0]);
+
+        assertThat(merged.getCount()).isEqualTo(0);
+        assertThat(merged.getColumnNames()).isEmpty();
+    }
+
+    @Test
+    public void testMerge_unsortedRuns_areConcatenated() {
+        final MatrixCursor first = createRun("a", 3);
+        final MatrixCursor second = createRun("b", 2);
+
+        final Cursor merged = mSortModel.mergeSortedCursors(new Cursor[] { first, second });
+
+        assertThat(ids(merged)).containsExactly("a0", "a1", "a2", "b0", "b1").inOrder();
+    }
+
+    @Test
+    public void testClose_leavesRunsOpen() {
+        final Cursor run = createRun("a", 3);
+
+        mSortModel.mergeSortedCursors(new Cursor[] { sort(run) }).close();
+
+        assertThat(run.isClosed()).isFalse();
+    }
+
+    @Test
+    public void testMerge_sharedPages_readPreviousWhileNextPageLoads() {
+        // Pages of a paged listing, merged again for every result through shares of their own.
+        final SnapshotCursor firstPage = SnapshotCursor.copyOf(createRun("a", 3));
+        final SnapshotCursor nextPage = SnapshotCursor.copyOf(createRun("b", 2));
+        final Cursor previous = mSortModel.mergeSortedCursors(new Cursor[] { firstPage.share() });
+        assertThat(previous.moveToPosition(1)).isTrue();
+
+        // Building the next result reads every page, e.g. to check the order.
+        final Cursor next = mSortModel.mergeSortedCursors(
+                new Cursor[] { firstPage.share(), nextPage.share() });
+        assertThat(ids(next)).containsExactly("a0", "a1", "a2", "b0", "b1").inOrder();
+
+        // The UI, still bound to the previous result, reads the row it was positioned on.
+        assertThat(previous.getPosition()).isEqualTo(1);
+        assertThat(getCursorString(previous, Document.COLUMN_DOCUMENT_ID)).isEqualTo("a1");
+    }
+
+    private void assertMergeMatchesSort(MatrixCursor... runs) {
+        final Cursor[] sortedRuns = new Cursor[runs.length];
+        for (int i = 0; i < runs.length; i++) {
+            sortedRuns[i] = sort(runs[i]);
+        }
+        final List<String> merged = ids(mSortModel.mergeSortedCursors(sortedRuns));
+
+        final List<String> expected = ids(sort(new MergeCursor(runs)));
+
+        assertThat(merged).containsExactlyElementsIn(expected).inOrder();
+    }
+
+    private Cursor sort(Cursor cursor) {
+        return mSortModel.sortCursor(cursor, mFileTypeLookup);
+    }
+
+    private MatrixCursor createRun(String prefix, int count) {
+        final MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        for (int i = 0; i < count; i++) {
+            final boolean isDir = mRand.nextInt(10) == 0;
+            cursor.addRow(new Object[] {
+                    prefix + i,
+                    "name" + mRand.nextInt(count),
+                    (long) mRand.nextInt(20),
+                    isDir ? Document.MIME_TYPE_DIR : "text/plain"
+            });
+        }
+        return cursor;
+    }
+
+    private static List<String> ids(Cursor cursor) {
+        final List<String> ids = new ArrayList<>();
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            ids.add(getCursorString(cursor, Document.COLUMN_DOCUMENT_ID));
+        }
+        return ids;
+    }
+}
@@ -20,6 +20,7 @@ import static com.android.documentsui.base.DocumentInfo.getCursorString;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
 
 import android.database.Cursor;
@@ -42,6 +43,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.HashSet;
 import java.util.List;
@@ -464,6 +466,261 @@ public class SortingCursorWrapperTest {
         }
     }
 
+    // Tests that empty names sort first, the same as Shared.compareToIgnoreCaseNullable.
+    @Test
+    public void testSort_names_emptyFirst() {
+        MatrixCursor c = new MatrixCursor(COLUMNS);
+        final String[] names = new String[] { "b", "", "A", null, "a" };
+        for (int i = 0; i < names.length; ++i) {
+            MatrixCursor.RowBuilder row = c.newRow();
+            row.add(Document.COLUMN_DOCUMENT_ID, Integer.toString(i));
+            row.add(Document.COLUMN_DISPLAY_NAME, names[i]);
+            row.add(Document.COLUMN_MIME_TYPE, "text/plain");
+        }
+
+        sortModel.sortByUser(SortModel.SORT_DIMENSION_ID_TITLE,
+                SortDimension.SORT_DIRECTION_ASCENDING);
+
+        final Cursor cursor = createSortingCursorWrapper(c);
+
+        final List<String> ids = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            ids.add(getCursorString(cursor, Document.COLUMN_DOCUMENT_ID));
+        }
+
+        // Empty names first, then "a" and "A" (equal at secondary strength) by document ID.
+        assertEquals(Arrays.asList("1", "3", "2", "4", "0"), ids);
+    }
+
+    // Tests sorting a listing large enough to generate collation keys in parallel.
+    @Test
+    public void testSort_names_large() {
+        final int count = 10000;
+        final Random rand = new Random(1);
+        MatrixCursor c = new MatrixCursor(COLUMNS);
+        for (int i = 0; i < count; ++i) {
+            MatrixCursor.RowBuilder row = c.newRow();
+            row.add(Document.COLUMN_DOCUMENT_ID, Integer.toString(i));
+            row.add(Document.COLUMN_DISPLAY_NAME, "IMG_" + rand.nextInt(count / 2));
+            row.add(Document.COLUMN_MIME_TYPE, "image/jpeg");
+        }
+
+        sortModel.sortByUser(SortModel.SORT_DIMENSION_ID_TITLE,
+                SortDimension.SORT_DIRECTION_ASCENDING);
+
+        final Cursor cursor = createSortingCursorWrapper(c);
+
+        String previousName = null;
+        String previousId = null;
+        while (cursor.moveToNext()) {
+            final String name = getCursorString(cursor, Document.COLUMN_DISPLAY_NAME);
+            final String id = getCursorString(cursor, Document.COLUMN_DOCUMENT_ID);
+            if (previousName != null) {
+                final int compare = Shared.compareToIgnoreCaseNullable(previousName, name);
+                assertTrue(compare < 0 || (compare == 0 && previousId.compareTo(id) < 0));
+            }
+            previousName = name;
+            previousId = id;
+        }
+        assertEquals(count, cursor.getCount());
+    }
+
+    @Test
+    public void testIsSorted() {
+        for (int id : new int[] {
+                SortModel.SORT_DIMENSION_ID_TITLE,
+                SortModel.SORT_DIMENSION_ID_SIZE}) {
+            for (int direction : new int[] {
+                    SortDimension.SORT_DIRECTION_ASCENDING,
+                    SortDimension.SORT_DIRECTION_DESCENDING}) {
+                sortModel.sortByUser(id, direction);
+                final SortDimension dimension = sortModel.getDimensionById(id);
+
+                assertFalse(SortingCursorWrapper.isSorted(cursor, dimension, fileTypeLookup));
+                assertTrue(SortingCursorWrapper.isSorted(
+                        copyOf(createSortingCursorWrapper()), dimension, fileTypeLookup));
+            }
+        }
+    }
+
+    @Test
+    public void testSortCursorIfUnsorted() {
+        sortModel.sortByUser(SortModel.SORT_DIMENSION_ID_TITLE,
+                SortDimension.SORT_DIRECTION_ASCENDING);
+
+        final Cursor presorted = copyOf(createSortingCursorWrapper());
+        assertTrue(presorted == sortModel.sortCursorIfUnsorted(presorted, fileTypeLookup));
+
+        final Cursor sorted = sortModel.sortCursorIfUnsorted(cursor, fileTypeLookup);
+        assertTrue(sorted instanceof SortingCursorWrapper);
+    }
+
+    @Test
+    public void testResort_matchesFreshSort() {
+        final Random rand = new Random(3);
+        final MatrixCursor c = new MatrixCursor(COLUMNS);
+        for (int i = 0; i < 200; ++i) {
+            MatrixCursor.RowBuilder row = c.newRow();
+            row.add(Document.COLUMN_DOCUMENT_ID, Integer.toString(i));
+            row.add(Document.COLUMN_DISPLAY_NAME, "name" + rand.nextInt(50));
+            row.add(Document.COLUMN_SIZE, rand.nextInt(10));
+            row.add(Document.COLUMN_LAST_MODIFIED,
+                    rand.nextInt(3) == 0 ? null : rand.nextInt(10));
+            row.add(Document.COLUMN_MIME_TYPE,
+                    rand.nextInt(5) == 0 ? Document.MIME_TYPE_DIR : MIMES[rand.nextInt(10)]);
+        }
+        populateTypeMap();
+
+        sortModel.sortByUser(SortModel.SORT_DIMENSION_ID_TITLE,
+                SortDimension.SORT_DIRECTION_ASCENDING);
+        Cursor current = sortModel.sortCursor(c, fileTypeLookup);
+
+        for (int id : new int[] {
+                SortModel.SORT_DIMENSION_ID_SIZE,
+                SortModel.SORT_DIMENSION_ID_DATE,
+                SortModel.SORT_DIMENSION_ID_FILE_TYPE,
+                SortModel.SORT_DIMENSION_ID_TITLE}) {
+            for (int direction : new int[] {
+                    SortDimension.SORT_DIRECTION_DESCENDING,
+                    SortDimension.SORT_DIRECTION_ASCENDING}) {
+                sortModel.sortByUser(id, direction);
+
+                final Cursor resorted = sortModel.resortCursor(current, fileTypeLookup);
+                final int[] positions = SortModel.mapResortedPositions(current, resorted);
+                final List<String> previousIds = ids(current);
+                final List<String> resortedIds = ids(resorted);
+                for (int i = 0; i < positions.length; i++) {
+                    assertEquals(previousIds.get(positions[i]), resortedIds.get(i));
+                }
+
+                assertEquals(ids(createSortingCursorWrapper(c)), resortedIds);
+                current.close();
+                current = resorted;
+            }
+        }
+    }
+
+    @Test
+    public void testResort_closesWrappedCursorWithLastCursor() {
+        sortModel.sortByUser(SortModel.SORT_DIMENSION_ID_TITLE,
+                SortDimension.SORT_DIRECTION_ASCENDING);
+        final Cursor sorted = sortModel.sortCursor(cursor, fileTypeLookup);
+        sortModel.sortByUser(SortModel.SORT_DIMENSION_ID_SIZE,
+                SortDimension.SORT_DIRECTION_ASCENDING);
+        final Cursor resorted = sortModel.resortCursor(sorted, fileTypeLookup);
+
+        sorted.close();
+        assertFalse(cursor.isClosed());
+
+        resorted.close();
+        assertTrue(cursor.isClosed());
+        assertNull(sortModel.resortCursor(resorted, fileTypeLookup));
+    }
+
+    @Test
+    public void testExtend_matchesFreshSort() {
+        final Random rand = new Random(5);
+        final List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < 200; ++i) {
+            rows.add(new Object[] {
+                    AUTHORITY,
+                    Integer.toString(i),
+                    0,
+                    "name" + rand.nextInt(50),
+                    rand.nextInt(10),
+                    rand.nextInt(3) == 0 ? null : rand.nextInt(10),
+                    rand.nextInt(5) == 0 ? Document.MIME_TYPE_DIR : MIMES[rand.nextInt(10)]
+            });
+        }
+        populateTypeMap();
+
+        for (int id : new int[] {
+                SortModel.SORT_DIMENSION_ID_TITLE,
+                SortModel.SORT_DIMENSION_ID_SIZE,
+                SortModel.SORT_DIMENSION_ID_DATE,
+                SortModel.SORT_DIMENSION_ID_FILE_TYPE}) {
+            for (int direction : new int[] {
+                    SortDimension.SORT_DIRECTION_ASCENDING,
+                    SortDimension.SORT_DIRECTION_DESCENDING}) {
+                sortModel.sortByUser(id, direction);
+
+                Cursor current = sortModel.sortCursor(cursorOf(rows, 0), fileTypeLookup);
+                for (int count : new int[] { 30, 31, 120, 200 }) {
+                    final Cursor c = cursorOf(rows, count);
+                    final Cursor extended =
+                            sortModel.extendSortedCursor(current, c, fileTypeLookup);
+                    final int[] positions = SortModel.mapExtendedPositions(current, extended);
+                    final List<String> previousIds = ids(current);
+                    final List<String> extendedIds = ids(extended);
+                    for (int i = 0; i < positions.length; i++) {
+                        if (positions[i] != -1) {
+                            assertEquals(previousIds.get(positions[i]), extendedIds.get(i));
+                        } else {
+                            assertFalse(previousIds.contains(extendedIds.get(i)));
+                        }
+                    }
+
+                    assertEquals(ids(createSortingCursorWrapper(cursorOf(rows, count))),
+                            extendedIds);
+                    current.close();
+                    current = extended;
+                }
+                current.close();
+            }
+        }
+    }
+
+    @Test
+    public void testExtend_changedRows_returnsNull() {
+        sortModel.sortByUser(SortModel.SORT_DIMENSION_ID_TITLE,
+                SortDimension.SORT_DIRECTION_ASCENDING);
+        final Cursor sorted = sortModel.sortCursor(cursor, fileTypeLookup);
+
+        final MatrixCursor fewer = new MatrixCursor(COLUMNS);
+        fewer.addRow(new Object[] { AUTHORITY, "0", 0, "a", 0, 0, "text/plain" });
+        assertNull(sortModel.extendSortedCursor(sorted, fewer, fileTypeLookup));
+
+        final MatrixCursor reordered = new MatrixCursor(COLUMNS);
+        for (int i = ITEM_COUNT - 1; i >= 0; --i) {
+            reordered.addRow(new Object[] {
+                    AUTHORITY, Integer.toString(i), 0, NAMES[i], 0, 0, "text/plain" });
+        }
+        assertNull(sortModel.extendSortedCursor(sorted, reordered, fileTypeLookup));
+    }
+
+    private static Cursor cursorOf(List<Object[]> rows, int count) {
+        final MatrixCursor c = new MatrixCursor(COLUMNS);
+        for (int i = 0; i < count; ++i) {
+            c.addRow(rows.get(i));
+        }
+        return c;
+    }
+
+    private static List<String> ids(Cursor cursor) {
+        final List<String> ids = new ArrayList<>();
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            ids.add(getCursorString(cursor, Document.COLUMN_DOCUMENT_ID));
+        }
+        return ids;
+    }
+
+    /**
+     * Copies the rows of the given cursor, in its current order, into a new cursor.
+     */
+    private static Cursor copyOf(Cursor cursor) {
+        final MatrixCursor copy = new MatrixCursor(cursor.getColumnNames());
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            final Object[] row = new Object[cursor.getColumnCount()];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = cursor.isNull(i) ? null : cursor.getString(i);
+            }
+            copy.addRow(row);
+        }
+        return copy;
+    }
+
     private void populateTypeMap() {
         for (int i = 0; i < ITEM_COUNT; ++i) {
             fileTypeLookup.fileTypes.put(MIMES[i], TYPES[i]);